@@ -28,7 +28,7 @@ fi
 # --- Compilation ---
 echo "Compilation du projet..."
 javac --module-path $JAVA_FX_PATH --add-modules javafx.controls,javafx.fxml \
-    -cp "$LIB_DIR/*" -d $OUT_DIR $(find src -name "*.java")
+    -cp "$LIB_DIR/*" -d $OUT_DIR $(find src/main -name "*.java")
 
 if [ $? -ne 0 ]; then
     echo "Erreur de compilation. Vérifie les messages ci-dessus."
@@ -0,0 +1,60 @@
+package cryptographie.maya.crypto;
+
+import java.io.InputStream;
+import java.security.KeyPair;
+import java.util.SplittableRandom;
+
+/** Clés et données partagées par les benchmarks JMH. */
+final class BenchSupport {
+
+    private BenchSupport() {}
+
+    /** Wrapper dans les deux sens pour {@code alg} : RSA-OAEP, ECIES-X25519 ou AES-KW-UMK. */
+    static DekWrapper wrapper(String alg) throws Exception {
+        return switch (alg) {
+            case FileCryptoEnvelope.DEK_ALG_RSA_OAEP -> wrapper(RsaKeyManager.generateKeyPair());
+            case FileCryptoEnvelope.DEK_ALG_X25519 -> wrapper(CryptoX25519.generateKeyPair());
+            case FileCryptoEnvelope.DEK_ALG_AES_KW_UMK ->
+                    DekWrapper.aesKw(alg, KeyDerivation.deriveDekWrappingKey(CryptoAesGcm.newDek(), 1));
+            default -> throw new IllegalArgumentException("Unknown wrap algorithm: " + alg);
+        };
+    }
+
+    static DekWrapper wrapper(KeyPair kp) {
+        return DekWrapper.forUserKeys(kp.getPublic(), kp.getPrivate());
+    }
+
+    /** Données pseudo-aléatoires reproductibles (incompressibles, comme un fichier chiffré ou une image). */
+    static byte[] payload(int size) {
+        byte[] b = new byte[size];
+        new SplittableRandom(42).nextBytes(b);
+        return b;
+    }
+
+    /** Flux de {@code total} octets obtenu en répétant {@code block}, sans tout garder en mémoire. */
+    static InputStream repeating(byte[] block, long total) {
+        return new InputStream() {
+            private long remaining = total;
+            private int pos;
+
+            @Override
+            public int read() {
+                if (remaining == 0) return -1;
+                remaining--;
+                int b = block[pos] & 0xFF;
+                pos = (pos + 1) % block.length;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len) {
+                if (remaining == 0) return -1;
+                int n = (int) Math.min(Math.min(len, remaining), block.length - pos);
+                System.arraycopy(block, pos, buf, off, n);
+                pos = (pos + n) % block.length;
+                remaining -= n;
+                return n;
+            }
+        };
+    }
+}
@@ -0,0 +1,62 @@
+package cryptographie.maya.crypto;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chiffrement / déchiffrement d'un item en mémoire (chemin byte[] de DriveService), de la note
+ * de 1 Kio au fichier de 16 Mio ; au-delà voir {@link StreamingEnvelopeBenchmark}.
+ * Le coût de l'enveloppe de la DEK est inclus : comparer les valeurs de {@code wrapAlg}.
+ * {@code cipher} compare AES-GCM et ChaCha20-Poly1305 pour le contenu.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EnvelopeBenchmark {
+
+    @Param({"1024", "65536", "1048576", "16777216"})
+    public int sizeBytes;
+
+    @Param({FileCryptoEnvelope.DEK_ALG_AES_KW_UMK, FileCryptoEnvelope.DEK_ALG_RSA_OAEP, FileCryptoEnvelope.DEK_ALG_X25519})
+    public String wrapAlg;
+
+    @Param({"AES_GCM", "CHACHA20_POLY1305"})
+    public ContentCipher cipher;
+
+    private DekWrapper wrapper;
+    private byte[] plaintext;
+    private FileCryptoEnvelope.EncryptedPayload encrypted;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        wrapper = BenchSupport.wrapper(wrapAlg);
+        plaintext = BenchSupport.payload(sizeBytes);
+        encrypted = FileCryptoEnvelope.encryptForUser(plaintext, wrapper, 1, "FILE", cipher);
+    }
+
+    @Benchmark
+    public FileCryptoEnvelope.EncryptedPayload encrypt() throws Exception {
+        return FileCryptoEnvelope.encryptForUser(plaintext, wrapper, 1, "FILE", cipher);
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws Exception {
+        return FileCryptoEnvelope.decryptForUser(encrypted.encryptedData(), encrypted.iv(), encrypted.encryptedDek(),
+                encrypted.dekAlg(), wrapper, 1, "FILE");
+    }
+}
@@ -0,0 +1,31 @@
+package cryptographie.maya.crypto;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+/** Génération d'une paire de clés utilisateur (inscription) ; RSA-2048 a une longue traîne, d'où SampleTime. */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class KeyGenBenchmark {
+
+    @Benchmark
+    public KeyPair rsa2048() throws Exception {
+        return RsaKeyManager.generateKeyPair();
+    }
+
+    @Benchmark
+    public KeyPair x25519() throws Exception {
+        return CryptoX25519.generateKeyPair();
+    }
+}
@@ -0,0 +1,64 @@
+package cryptographie.maya.crypto;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing des clés utilisateur : clé publique Base64 (colonne users.public_key) et clé privée
+ * PKCS#8 lue depuis keys/ (écrite dans le répertoire courant le temps du benchmark).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyParsingBenchmark {
+
+    @Param({"RSA", "X25519"})
+    public String keyAlg;
+
+    private String username;
+    private String publicKeyB64;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        KeyPair kp = "RSA".equals(keyAlg) ? RsaKeyManager.generateKeyPair() : CryptoX25519.generateKeyPair();
+        username = "jmh-bench-" + keyAlg.toLowerCase();
+        publicKeyB64 = RsaKeyManager.publicKeyToBase64(kp.getPublic());
+        RsaKeyManager.savePrivateKey(username, kp.getPrivate());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(Paths.get("keys").resolve(username + ".pk8"));
+    }
+
+    @Benchmark
+    public PublicKey parsePublicKey() throws Exception {
+        return RsaKeyManager.publicKeyFromBase64(publicKeyB64);
+    }
+
+    @Benchmark
+    public PrivateKey loadPrivateKey() throws Exception {
+        return RsaKeyManager.loadPrivateKey(username);
+    }
+}
@@ -0,0 +1,50 @@
+package cryptographie.maya.crypto;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** Enveloppe / déballage d'une DEK de 32 octets par algorithme. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyWrapBenchmark {
+
+    @Param({FileCryptoEnvelope.DEK_ALG_RSA_OAEP, FileCryptoEnvelope.DEK_ALG_X25519, FileCryptoEnvelope.DEK_ALG_AES_KW_UMK})
+    public String alg;
+
+    private DekWrapper wrapper;
+    private byte[] dek;
+    private byte[] wrapped;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        wrapper = BenchSupport.wrapper(alg);
+        dek = CryptoAesGcm.newDek();
+        wrapped = wrapper.wrap(dek);
+    }
+
+    @Benchmark
+    public byte[] wrap() throws Exception {
+        return wrapper.wrap(dek);
+    }
+
+    @Benchmark
+    public byte[] unwrap() throws Exception {
+        return wrapper.unwrap(wrapped);
+    }
+}
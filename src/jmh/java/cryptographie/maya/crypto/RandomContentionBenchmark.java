@@ -0,0 +1,73 @@
+package cryptographie.maya.crypto;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tirage d'une DEK (32 octets) : un {@link SecureRandom} statique partagé (ancien CryptoAesGcm)
+ * contre le DRBG par thread de {@link CryptoRandom}, à 1, 4 et {@link Threads#MAX} threads.
+ * Le débit agrégé du premier plafonne sur son verrou, le second croît avec le nombre de cœurs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RandomContentionBenchmark {
+
+    private final SecureRandom shared = new SecureRandom();
+
+    private byte[] sharedDek() {
+        byte[] dek = new byte[CryptoAesGcm.DEK_LEN];
+        shared.nextBytes(dek);
+        return dek;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public byte[] sharedSecureRandom_1thread() {
+        return sharedDek();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public byte[] sharedSecureRandom_4threads() {
+        return sharedDek();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public byte[] sharedSecureRandom_allThreads() {
+        return sharedDek();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public byte[] perThreadDrbg_1thread() {
+        return CryptoAesGcm.newDek();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public byte[] perThreadDrbg_4threads() {
+        return CryptoAesGcm.newDek();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public byte[] perThreadDrbg_allThreads() {
+        return CryptoAesGcm.newDek();
+    }
+}
@@ -0,0 +1,88 @@
+package cryptographie.maya.crypto;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gros fichiers (64 Mio à 1 Gio) en flux : chiffrement depuis une source synthétique vers un
+ * puits, déchiffrement depuis un fichier temporaire. {@code engine} compare le flux séquentiel
+ * (un cœur) au moteur {@link ParallelSegmentCipher} (tous les cœurs). Temps par opération.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class StreamingEnvelopeBenchmark {
+
+    private static final int BLOCK = 1 << 20;
+
+    @Param({"67108864", "268435456", "1073741824"})
+    public long sizeBytes;
+
+    @Param({"sequential", "parallel"})
+    public String engine;
+
+    private DekWrapper wrapper;
+    private byte[] block;
+    private ParallelSegmentCipher parallel;
+    private Path ciphertextFile;
+    private FileCryptoEnvelope.WrappedKey key;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        wrapper = BenchSupport.wrapper(FileCryptoEnvelope.DEK_ALG_AES_KW_UMK);
+        block = BenchSupport.payload(BLOCK);
+        parallel = "parallel".equals(engine) ? new ParallelSegmentCipher() : null;
+
+        ciphertextFile = Files.createTempFile("jmh-envelope", ".bin");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(ciphertextFile))) {
+            key = FileCryptoEnvelope.encryptForUser(BenchSupport.repeating(block, sizeBytes), out, wrapper, 1, "FILE", null);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (parallel != null) parallel.close();
+        Files.deleteIfExists(ciphertextFile);
+    }
+
+    @Benchmark
+    public FileCryptoEnvelope.WrappedKey encrypt() throws Exception {
+        return FileCryptoEnvelope.encryptForUser(BenchSupport.repeating(block, sizeBytes), OutputStream.nullOutputStream(),
+                wrapper, 1, "FILE", parallel);
+    }
+
+    @Benchmark
+    public long decrypt() throws Exception {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(ciphertextFile), BLOCK)) {
+            if (parallel != null) {
+                return FileCryptoEnvelope.decryptForUser(in, OutputStream.nullOutputStream(), key.encryptedDek(), key.dekAlg(),
+                        wrapper, 1, "FILE", parallel).plaintextBytes();
+            }
+            try (InputStream plain = FileCryptoEnvelope.decryptForUser(in, key.iv(), key.encryptedDek(), key.dekAlg(), wrapper, 1, "FILE")) {
+                return plain.transferTo(OutputStream.nullOutputStream());
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package cryptographie.maya.crypto;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Débit agrégé en un thread et en {@link Threads#MAX} threads (un par cœur) : montre ce qui
+ * passe à l'échelle (AES-GCM, caches de Cipher par thread) et ce qui se contend (aléa partagé).
+ * Note de 4 Kio et déballage RSA, les deux opérations les plus fréquentes sur le tableau de bord.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ThreadScalingBenchmark {
+
+    private DekWrapper aesKw;
+    private DekWrapper rsa;
+    private byte[] note;
+    private byte[] rsaWrapped;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        aesKw = BenchSupport.wrapper(FileCryptoEnvelope.DEK_ALG_AES_KW_UMK);
+        rsa = BenchSupport.wrapper(FileCryptoEnvelope.DEK_ALG_RSA_OAEP);
+        note = BenchSupport.payload(4096);
+        rsaWrapped = rsa.wrap(CryptoAesGcm.newDek());
+    }
+
+    @Benchmark
+    @Threads(1)
+    public FileCryptoEnvelope.EncryptedPayload encryptNote_1thread() throws Exception {
+        return FileCryptoEnvelope.encryptForUser(note, aesKw, 1, "NOTE");
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public FileCryptoEnvelope.EncryptedPayload encryptNote_allThreads() throws Exception {
+        return FileCryptoEnvelope.encryptForUser(note, aesKw, 1, "NOTE");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public byte[] rsaUnwrap_1thread() throws Exception {
+        return rsa.unwrap(rsaWrapped);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public byte[] rsaUnwrap_allThreads() throws Exception {
+        return rsa.unwrap(rsaWrapped);
+    }
+}
@@ -0,0 +1,99 @@
+package cryptographie.maya.service;
+
+import de.mkammerer.argon2.Argon2;
+import de.mkammerer.argon2.Argon2Factory;
+import org.mindrot.jbcrypt.BCrypt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latence du hash (inscription, migration) et de la vérification (login) des mots de passe, par
+ * jeu de paramètres : Argon2id {@code t:m:p} et BCrypt historique, en un thread et un par cœur.
+ * {@code verifierPool_allThreads} passe par {@link PasswordVerifier} (budget 512 Mio) : l'écart
+ * avec {@code verify_allThreads} est l'attente imposée par le budget mémoire.
+ *
+ * mvn -B -Pjmh verify -Djmh.args="PasswordHash -p scheme=argon2id:3:65536:1"
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PasswordHashBenchmark {
+
+    @Param({"argon2id:2:19456:1", "argon2id:3:65536:1", "argon2id:4:131072:1", "bcrypt:10"})
+    public String scheme;
+
+    private static final char[] PASSWORD = "correct horse battery staple".toCharArray();
+    private static final Argon2 ARGON2 = Argon2Factory.create(Argon2Factory.Argon2Types.ARGON2id);
+
+    private PasswordPolicy policy;
+    private int bcryptCost;
+    private String stored;
+    private PasswordVerifier verifier;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] parts = scheme.split(":");
+        if (parts[0].equals("bcrypt")) {
+            bcryptCost = Integer.parseInt(parts[1]);
+        } else {
+            policy = new PasswordPolicy(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+        }
+        stored = hash();
+        verifier = new PasswordVerifier(512L * 1024, 1024, Long.MAX_VALUE,
+                policy != null ? policy : PasswordPolicy.DEFAULT);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        verifier.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String hash_1thread() {
+        return hash();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean verify_1thread() {
+        return verify();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean verify_allThreads() {
+        return verify();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean verifierPool_allThreads() throws Exception {
+        return verifier.verify(stored, PASSWORD);
+    }
+
+    private String hash() {
+        return policy != null ? policy.hash(PASSWORD) : BCrypt.hashpw(new String(PASSWORD), BCrypt.gensalt(bcryptCost));
+    }
+
+    private boolean verify() {
+        return policy != null ? ARGON2.verify(stored, PASSWORD) : BCrypt.checkpw(new String(PASSWORD), stored);
+    }
+}
@@ -1,5 +1,6 @@
 package cryptographie.maya;
 
+import cryptographie.maya.crypto.ProviderCalibration;
 import cryptographie.maya.dao.DatabaseManager;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
@@ -10,6 +11,9 @@ public class MainApp extends Application {
 
     @Override
     public void start(Stage stage) throws Exception {
+        // Providers JCA, taille de segment et chiffrement (AES-GCM / ChaCha20) les plus rapides sur cette machine
+        ProviderCalibration.calibrateInBackground();
+
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/login.fxml"));
 
         Scene scene = new Scene(loader.load(), 1280, 720);
@@ -1,6 +1,7 @@
 package cryptographie.maya.controller;
 
 import cryptographie.maya.service.DriveService;
+import cryptographie.maya.service.Session;
 import cryptographie.maya.service.SessionManager;
 import javafx.application.Platform;
 import javafx.concurrent.Task;
@@ -64,8 +65,7 @@ public class AddFileController {
             return;
         }
 
-        int userId = SessionManager.getUserId();
-        String username = SessionManager.getUsername();
+        Session session = SessionManager.requireSession();
         Path path = file.toPath();
 
         if (chooseFileButton != null) chooseFileButton.setDisable(true);
@@ -73,7 +73,7 @@ public class AddFileController {
         Task<Integer> task = new Task<>() {
             @Override
             protected Integer call() throws Exception {
-                return driveService.addFile(userId, username, title, path);
+                return driveService.addFile(session, title, path);
             }
         };
 
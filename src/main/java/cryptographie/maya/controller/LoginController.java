@@ -165,7 +165,14 @@ public class LoginController {
     }
 
     private void handleAuthError(Throwable ex) {
-        String msg = (ex instanceof AuthException) ? "Identifiant ou mot de passe incorrect." : "Erreur de connexion au serveur.";
+        String msg;
+        if (ex instanceof AuthException && "SERVER_BUSY".equals(ex.getMessage())) {
+            msg = "Trop de connexions en cours, réessayez dans quelques secondes.";
+        } else if (ex instanceof AuthException && "TOO_MANY_ATTEMPTS".equals(ex.getMessage())) {
+            msg = "Trop de tentatives pour ce compte, réessayez dans une minute.";
+        } else {
+            msg = (ex instanceof AuthException) ? "Identifiant ou mot de passe incorrect." : "Erreur de connexion au serveur.";
+        }
         showAlert(Alert.AlertType.ERROR, "Échec", msg);
     }
 
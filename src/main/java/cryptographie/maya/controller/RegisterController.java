@@ -1,10 +1,15 @@
 package cryptographie.maya.controller;
 
+import cryptographie.maya.crypto.CryptoX25519;
+import cryptographie.maya.crypto.KeyPairPool;
 import cryptographie.maya.crypto.RsaKeyManager;
 import cryptographie.maya.dao.DatabaseManager;
+import cryptographie.maya.service.LoginThrottle;
+import cryptographie.maya.service.PasswordPolicy;
 import de.mkammerer.argon2.Argon2;
 import de.mkammerer.argon2.Argon2Factory;
 import javafx.application.Platform;
+import javafx.collections.FXCollections;
 import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -30,6 +35,26 @@ public class RegisterController {
     @FXML private TextField firstNameTextField, lastNameTextField, userNameTextField;
     @FXML private PasswordField passwordField, confirmPasswordField;
     @FXML private Button registerButton, closeButton;
+    @FXML private ChoiceBox<String> keyTypeChoice;
+
+    @FXML
+    private void initialize() {
+        // Type de la paire de clés, choisi par l'utilisateur et gardé à chaque rotation
+        if (keyTypeChoice != null) {
+            keyTypeChoice.setItems(FXCollections.observableArrayList(RsaKeyManager.USER_KEY_ALGS));
+            keyTypeChoice.setValue(RsaKeyManager.DEFAULT_USER_KEY_ALG);
+            keyTypeChoice.getSelectionModel().selectedItemProperty().addListener((obs, o, n) -> {
+                if (!CryptoX25519.ALG.equals(n)) KeyPairPool.shared().warmUp();
+            });
+        }
+        // Pré-génère des paires RSA pendant que l'utilisateur remplit le formulaire
+        if (!CryptoX25519.ALG.equals(selectedKeyAlg())) KeyPairPool.shared().warmUp();
+    }
+
+    private String selectedKeyAlg() {
+        return keyTypeChoice == null || keyTypeChoice.getValue() == null
+                ? RsaKeyManager.DEFAULT_USER_KEY_ALG : keyTypeChoice.getValue();
+    }
 
     @FXML
     private void handleRegister() {
@@ -38,6 +63,7 @@ public class RegisterController {
         String username  = safeGetTrimmed(userNameTextField);
         String password  = passwordField.getText();
         String confirm   = confirmPasswordField.getText();
+        String keyAlg    = selectedKeyAlg();
 
         if (firstName.isEmpty() || lastName.isEmpty() || username.isEmpty() || password.isEmpty()) {
             showAlert(Alert.AlertType.WARNING, "Champs manquants", "Veuillez remplir tous les champs.");
@@ -57,13 +83,13 @@ public class RegisterController {
             protected Void call() throws Exception {
                 Argon2 argon2 = Argon2Factory.create(Argon2Factory.Argon2Types.ARGON2id);
                 try {
-                    String passwordHash = argon2.hash(3, 65536, 1, pwChars);
+                    String passwordHash = PasswordPolicy.current().hash(pwChars);
 
                     // ✅ salt obligatoire en DB (NOT NULL)
                     String saltB64 = generateSaltBase64(16);
 
-                    // Génération RSA
-                    KeyPair kp = RsaKeyManager.generateKeyPair();
+                    // Paire du type choisi ; RSA pré-générée (génération inline seulement si le pool est vide)
+                    KeyPair kp = RsaKeyManager.newUserKeyPair(keyAlg);
                     String publicKeyB64 = RsaKeyManager.publicKeyToBase64(kp.getPublic());
 
                     String sql = """
@@ -83,6 +109,8 @@ public class RegisterController {
                         ps.setString(7, publicKeyB64);
                         ps.executeUpdate();
                     }
+                    // Un login raté juste avant l'inscription ne doit pas masquer le nouveau compte
+                    LoginThrottle.shared().forgetMissing(username);
 
                     RsaKeyManager.savePrivateKey(username, kp.getPrivate());
 
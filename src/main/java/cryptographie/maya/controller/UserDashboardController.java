@@ -21,7 +21,6 @@ import javafx.stage.Window;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
@@ -75,7 +74,7 @@ public class UserDashboardController {
         Task<List<RowItem>> loadTask = new Task<>() {
             @Override
             protected List<RowItem> call() throws Exception {
-                List<SecureItem> dbItems = driveService.listItems(SessionManager.requireUserId());
+                List<SecureItem> dbItems = driveService.listItems(SessionManager.requireSession());
                 List<RowItem> rows = new ArrayList<>();
                 for (SecureItem si : dbItems) {
                     String date = si.getCreatedAt() != null ? si.getCreatedAt().format(DT_FMT) : "N/A";
@@ -120,7 +119,7 @@ public class UserDashboardController {
             if (response == ButtonType.YES) {
                 new Thread(() -> {
                     try {
-                        if (driveService.deleteItem(SessionManager.requireUserId(), sel.getId())) {
+                        if (driveService.deleteItem(SessionManager.requireSession(), sel.getId())) {
                             Platform.runLater(() -> items.remove(sel));
                         }
                     } catch (Exception e) {
@@ -136,24 +135,35 @@ public class UserDashboardController {
         RowItem sel = itemsTable.getSelectionModel().getSelectedItem();
         if (sel == null) return;
 
-        new Thread(() -> {
-            try {
-                byte[] plain = driveService.downloadItemBytes(SessionManager.getUserId(), SessionManager.getUsername(), sel.getId());
-                Platform.runLater(() -> {
-                    FileChooser fc = new FileChooser();
-                    fc.setInitialFileName(sel.getTitle());
-                    File out = fc.showSaveDialog(itemsTable.getScene().getWindow());
-                    if (out != null) {
-                        try {
-                            Files.write(out.toPath(), plain);
-                            showAlert(Alert.AlertType.INFORMATION, "Succès", "Fichier déchiffré enregistré.");
-                        } catch (IOException e) { showAlert(Alert.AlertType.ERROR, "Erreur", "Échec d'écriture."); }
-                    }
+        // Destination choisie d'abord : le déchiffrement écrit directement dans le fichier, sans copie en mémoire
+        FileChooser fc = new FileChooser();
+        fc.setInitialFileName(sel.getTitle());
+        File out = fc.showSaveDialog(itemsTable.getScene().getWindow());
+        if (out == null) return;
+
+        Task<Long> downloadTask = new Task<>() {
+            @Override
+            protected Long call() throws Exception {
+                updateMessage("DÉCHIFFREMENT...");
+                return driveService.downloadItemTo(SessionManager.requireSession(), sel.getId(), out.toPath(), (written, total) -> {
+                    updateProgress(written, total);
+                    updateMessage(total > 0 ? String.format("DÉCHIFFREMENT %d %%", written * 100 / total) : "DÉCHIFFREMENT...");
                 });
-            } catch (Exception ex) {
-                Platform.runLater(() -> showAlert(Alert.AlertType.ERROR, "Crypto Error", "Déchiffrement échoué."));
             }
-        }).start();
+        };
+        String label = downloadButton.getText();
+        downloadButton.textProperty().bind(downloadTask.messageProperty());
+        downloadButton.setDisable(true);
+        downloadTask.runningProperty().addListener((obs, was, running) -> {
+            if (!running) {
+                downloadButton.textProperty().unbind();
+                downloadButton.setText(label);
+                downloadButton.setDisable(false);
+            }
+        });
+        downloadTask.setOnSucceeded(e -> showAlert(Alert.AlertType.INFORMATION, "Succès", "Fichier déchiffré enregistré."));
+        downloadTask.setOnFailed(e -> showAlert(Alert.AlertType.ERROR, "Crypto Error", "Déchiffrement ou écriture échoué."));
+        new Thread(downloadTask).start();
     }
 
     @FXML
@@ -0,0 +1,85 @@
+package cryptographie.maya.crypto;
+
+import javax.crypto.Cipher;
+import java.security.GeneralSecurityException;
+import java.security.Provider;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-thread {@link Cipher} instances. {@code Cipher.getInstance} walks the provider list on
+ * every call, which dominates the cost of small notes; a Cipher is not thread-safe but can be
+ * re-initialised for each operation, so one instance per thread and transformation is enough.
+ *
+ * Callers must run init + doFinal within the same method (no interleaving on one thread).
+ * A cached instance keeps the key schedule of its last {@code init} until the next one, so
+ * key material outlives the operation here (see {@link SecretBufferPool}).
+ *
+ * A transformation can be pinned to a provider (see {@link ProviderCalibration}); threads
+ * pick the pinned provider up on their next call.
+ */
+final class CipherCache {
+    static final String AES_GCM = "AES/GCM/NoPadding";
+    static final String RSA_OAEP = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
+    static final String AES_KW = "AES/KW/NoPadding";
+    static final String CHACHA20_POLY1305 = "ChaCha20-Poly1305";
+
+    private static final ThreadLocal<Cipher> AES_GCM_CIPHER = ThreadLocal.withInitial(() -> newCipher(AES_GCM));
+    private static final ThreadLocal<Cipher> RSA_OAEP_CIPHER = ThreadLocal.withInitial(() -> newCipher(RSA_OAEP));
+    private static final ThreadLocal<Cipher> AES_KW_CIPHER = ThreadLocal.withInitial(() -> newCipher(AES_KW));
+    private static final ThreadLocal<Cipher> CHACHA20_POLY1305_CIPHER = ThreadLocal.withInitial(() -> newCipher(CHACHA20_POLY1305));
+
+    private static final Map<String, Provider> PINNED = new ConcurrentHashMap<>();
+
+    private CipherCache() {}
+
+    static Cipher aesGcm() {
+        return current(AES_GCM_CIPHER, AES_GCM);
+    }
+
+    static Cipher rsaOaep() {
+        return current(RSA_OAEP_CIPHER, RSA_OAEP);
+    }
+
+    static Cipher aesKw() {
+        return current(AES_KW_CIPHER, AES_KW);
+    }
+
+    static Cipher chaCha20Poly1305() {
+        return current(CHACHA20_POLY1305_CIPHER, CHACHA20_POLY1305);
+    }
+
+    /** New instance from the pinned provider, or the default lookup when none is pinned. */
+    static Cipher getInstance(String transformation) throws GeneralSecurityException {
+        Provider p = PINNED.get(transformation);
+        return p != null ? Cipher.getInstance(transformation, p) : Cipher.getInstance(transformation);
+    }
+
+    static void pin(String transformation, Provider provider) {
+        PINNED.put(transformation, provider);
+    }
+
+    /** Provider used for {@code transformation}: the pinned one, else the JCA default. */
+    static Provider provider(String transformation) throws GeneralSecurityException {
+        Provider p = PINNED.get(transformation);
+        return p != null ? p : Cipher.getInstance(transformation).getProvider();
+    }
+
+    private static Cipher current(ThreadLocal<Cipher> cache, String transformation) {
+        Cipher c = cache.get();
+        Provider p = PINNED.get(transformation);
+        if (p != null && c.getProvider() != p) {
+            c = newCipher(transformation);
+            cache.set(c);
+        }
+        return c;
+    }
+
+    private static Cipher newCipher(String transformation) {
+        try {
+            return getInstance(transformation);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(transformation + " not available", e);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package cryptographie.maya.crypto;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * AEAD used for the segments of a {@link StreamingAesGcm} envelope. Both ciphers take a 256-bit
+ * key, a 12-byte nonce and produce a 16-byte tag, so the envelope layout is identical; the id is
+ * recorded in the header (and therefore authenticated).
+ *
+ * AES-GCM is the fastest option with AES-NI/PMULL; without them (old CPUs, VMs masking the
+ * flags) ChaCha20-Poly1305 is several times faster. {@link #calibrate()} measures both on the
+ * current host and picks the cipher for new items; {@code -Dbluelocker.cipher=aes|chacha}
+ * forces the choice. Reading never depends on the choice.
+ */
+public enum ContentCipher {
+    AES_GCM(0, "AES", CipherCache.AES_GCM),
+    CHACHA20_POLY1305(1, "ChaCha20", CipherCache.CHACHA20_POLY1305);
+
+    private static final int TAG_LEN_BITS = StreamingAesGcm.TAG_LEN * 8;
+    private static final int CALIBRATION_SEGMENT = StreamingAesGcm.DEFAULT_SEGMENT_SIZE;
+    private static final long CALIBRATION_NANOS = 150_000_000L;
+
+    private static final String FORCED = System.getProperty("bluelocker.cipher", "auto").toLowerCase(Locale.ROOT);
+    private static volatile ContentCipher forNewItems = forced() != null ? forced() : AES_GCM;
+    private static volatile Calibration lastCalibration;
+
+    private final int id;
+    private final String keyAlg;
+    private final String transformation;
+
+    ContentCipher(int id, String keyAlg, String transformation) {
+        this.id = id;
+        this.keyAlg = keyAlg;
+        this.transformation = transformation;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public static ContentCipher byId(int id) throws GeneralSecurityException {
+        for (ContentCipher c : values()) {
+            if (c.id == id) return c;
+        }
+        throw new GeneralSecurityException("Unknown content cipher: " + id);
+    }
+
+    /** Whether the installed providers implement this cipher. */
+    public boolean available() {
+        try {
+            CipherCache.getInstance(transformation);
+            return true;
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    /** Cipher for items encrypted from now on: forced, calibrated, or AES-GCM until calibration ran. */
+    public static ContentCipher forNewItems() {
+        return forNewItems;
+    }
+
+    /** Result of the last {@link #calibrate()}, null if it never ran. */
+    public static Calibration lastCalibration() {
+        return lastCalibration;
+    }
+
+    // --- per-segment primitives (see StreamingAesGcm.seal/open) ---
+
+    /** This thread's instance; same re-init rules as {@link CipherCache}. */
+    Cipher cipher() {
+        return this == AES_GCM ? CipherCache.aesGcm() : CipherCache.chaCha20Poly1305();
+    }
+
+    /** Dedicated instance for objects that may move across threads (streams). */
+    Cipher newCipher() throws GeneralSecurityException {
+        return CipherCache.getInstance(transformation);
+    }
+
+    SecretKeySpec key(byte[] dek) {
+        return new SecretKeySpec(dek, keyAlg);
+    }
+
+    /** View on a pooled DEK, valid while its lease is open. */
+    SecretKey key(SecretBuffer dek) {
+        return dek.key(keyAlg);
+    }
+
+    /** Heap copy of a pooled DEK for objects that outlive the lease (streams). */
+    SecretKey detachedKey(SecretBuffer dek) {
+        return dek.detachedKey(keyAlg);
+    }
+
+    AlgorithmParameterSpec params(byte[] nonce) {
+        return this == AES_GCM ? new GCMParameterSpec(TAG_LEN_BITS, nonce) : new IvParameterSpec(nonce);
+    }
+
+    void init(Cipher c, int mode, SecretKey key, byte[] nonce) throws GeneralSecurityException {
+        try {
+            c.init(mode, key, params(nonce));
+        } catch (InvalidKeyException e) {
+            // SunJCE's ChaCha20 refuses the key + nonce of its previous init, even to decrypt the
+            // same segment again (second download on the same thread). Decrypting is harmless:
+            // step through a throwaway key. Encrypting twice with one nonce stays an error.
+            if (this != CHACHA20_POLY1305 || mode != Cipher.DECRYPT_MODE) throw e;
+            c.init(Cipher.DECRYPT_MODE, ResetKey.KEY, new IvParameterSpec(ResetKey.NONCE));
+            c.init(mode, key, params(nonce));
+        }
+    }
+
+    private static final class ResetKey {
+        static final SecretKeySpec KEY = new SecretKeySpec(CryptoRandom.bytes(CryptoAesGcm.DEK_LEN), "ChaCha20");
+        static final byte[] NONCE = CryptoRandom.bytes(CryptoAesGcm.IV_LEN);
+    }
+
+    // --- calibration ---
+
+    /** Measured single-thread segment throughput per cipher and the resulting choice. */
+    public record Calibration(Map<ContentCipher, Double> mbPerSecond, ContentCipher chosen, boolean forced) {
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("Content cipher calibration:");
+            mbPerSecond.forEach((c, mbps) -> sb.append(String.format(" %s %.0f MB/s;", c, mbps)));
+            return sb.append(" new items use ").append(chosen).append(forced ? " (forced)" : "").toString();
+        }
+    }
+
+    /**
+     * Seals {@link StreamingAesGcm#DEFAULT_SEGMENT_SIZE} segments with each available cipher
+     * for a short warm-up then a timed window (~0.3 s each), and switches new items to the
+     * fastest one unless {@code -Dbluelocker.cipher} forces it.
+     */
+    public static Calibration calibrate() {
+        Map<ContentCipher, Double> results = new EnumMap<>(ContentCipher.class);
+        for (ContentCipher c : values()) {
+            if (!c.available()) continue;
+            try {
+                measure(c); // warm-up: lets the JIT reach the intrinsics
+                results.put(c, measure(c));
+            } catch (GeneralSecurityException e) {
+                // not usable on this provider: left out of the choice
+            }
+        }
+
+        ContentCipher forced = forced();
+        ContentCipher chosen = forced != null ? forced : results.entrySet().stream()
+                .max(Map.Entry.comparingByValue()).map(Map.Entry::getKey).orElse(AES_GCM);
+        forNewItems = chosen;
+        Calibration calibration = new Calibration(results, chosen, forced != null);
+        lastCalibration = calibration;
+        return calibration;
+    }
+
+    private static double measure(ContentCipher c) throws GeneralSecurityException {
+        byte[] pt = CryptoRandom.bytes(CALIBRATION_SEGMENT);
+        byte[] ct = new byte[CALIBRATION_SEGMENT + StreamingAesGcm.TAG_LEN];
+        byte[] aad = new byte[StreamingAesGcm.MAX_HEADER_LEN];
+        byte[] prefix = new byte[StreamingAesGcm.NONCE_PREFIX_LEN];
+        SecretKeySpec key = c.key(CryptoRandom.bytes(CryptoAesGcm.DEK_LEN));
+        Cipher cipher = c.newCipher();
+
+        long start = System.nanoTime();
+        long bytes = 0;
+        long elapsed;
+        int index = 0;
+        do {
+            StreamingAesGcm.seal(cipher, c, key, prefix, index++, false, aad, pt, 0, pt.length, ct, 0);
+            bytes += pt.length;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < CALIBRATION_NANOS);
+        return (bytes / 1_000_000.0) / (elapsed / 1_000_000_000.0);
+    }
+
+    private static ContentCipher forced() {
+        return switch (FORCED) {
+            case "aes", "aes-gcm" -> AES_GCM;
+            case "chacha", "chacha20", "chacha20-poly1305" -> CHACHA20_POLY1305;
+            default -> null;
+        };
+    }
+}
@@ -1,42 +1,66 @@
 package cryptographie.maya.crypto;
 
 import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
-import java.security.SecureRandom;
+import java.nio.ByteBuffer;
 
 public final class CryptoAesGcm {
-    private static final SecureRandom RND = new SecureRandom();
-
     public static final int DEK_LEN = 32;
     public static final int IV_LEN = 12;
-    private static final int TAG_LEN_BITS = 128;
+    public static final int TAG_LEN = 16;
+    private static final int TAG_LEN_BITS = TAG_LEN * 8;
 
     private CryptoAesGcm() {}
 
     public static byte[] newDek() {
-        byte[] dek = new byte[DEK_LEN];
-        RND.nextBytes(dek);
-        return dek;
+        return CryptoRandom.bytes(DEK_LEN);
     }
 
     public static byte[] newIv() {
-        byte[] iv = new byte[IV_LEN];
-        RND.nextBytes(iv);
-        return iv;
+        return CryptoRandom.bytes(IV_LEN);
     }
 
     public static byte[] encrypt(byte[] plaintext, byte[] dek, byte[] iv, byte[] aad) throws Exception {
-        Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
-        c.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(dek, "AES"), new GCMParameterSpec(TAG_LEN_BITS, iv));
-        if (aad != null) c.updateAAD(aad);
+        Cipher c = init(Cipher.ENCRYPT_MODE, dek, iv, aad);
         return c.doFinal(plaintext); // ciphertext + tag
     }
 
     public static byte[] decrypt(byte[] ciphertext, byte[] dek, byte[] iv, byte[] aad) throws Exception {
-        Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
-        c.init(Cipher.DECRYPT_MODE, new SecretKeySpec(dek, "AES"), new GCMParameterSpec(TAG_LEN_BITS, iv));
-        if (aad != null) c.updateAAD(aad);
+        Cipher c = init(Cipher.DECRYPT_MODE, dek, iv, aad);
+        return c.doFinal(ciphertext);
+    }
+
+    /** Legacy single-shot decryption with a pooled DEK (read in place, no heap copy of the key). */
+    public static byte[] decrypt(byte[] ciphertext, SecretBuffer dek, byte[] iv, byte[] aad) throws Exception {
+        Cipher c = init(Cipher.DECRYPT_MODE, dek.key("AES"), iv, aad);
         return c.doFinal(ciphertext);
     }
-}
\ No newline at end of file
+
+    /**
+     * Encrypts the remaining bytes of {@code plaintext} into {@code out} (heap or direct) and
+     * returns the number of bytes written. {@code out} needs {@code remaining + TAG_LEN} bytes free.
+     */
+    public static int encrypt(ByteBuffer plaintext, ByteBuffer out, byte[] dek, byte[] iv, byte[] aad) throws Exception {
+        Cipher c = init(Cipher.ENCRYPT_MODE, dek, iv, aad);
+        return c.doFinal(plaintext, out);
+    }
+
+    /** Decrypts the remaining bytes of {@code ciphertext} into {@code out}; returns the plaintext length. */
+    public static int decrypt(ByteBuffer ciphertext, ByteBuffer out, byte[] dek, byte[] iv, byte[] aad) throws Exception {
+        Cipher c = init(Cipher.DECRYPT_MODE, dek, iv, aad);
+        return c.doFinal(ciphertext, out);
+    }
+
+    private static Cipher init(int mode, byte[] dek, byte[] iv, byte[] aad) throws Exception {
+        return init(mode, new SecretKeySpec(dek, "AES"), iv, aad);
+    }
+
+    private static Cipher init(int mode, SecretKey key, byte[] iv, byte[] aad) throws Exception {
+        Cipher c = CipherCache.aesGcm();
+        c.init(mode, key, new GCMParameterSpec(TAG_LEN_BITS, iv));
+        if (aad != null) c.updateAAD(aad);
+        return c;
+    }
+}
@@ -0,0 +1,56 @@
+package cryptographie.maya.crypto;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.DrbgParameters;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.security.DrbgParameters.Capability.RESEED_ONLY;
+
+/**
+ * Source of key and nonce material. Each thread owns a NIST SP 800-90A DRBG (Hash_DRBG,
+ * 256-bit strength) seeded from the system entropy source, so parallel uploads never queue
+ * on a shared {@link SecureRandom} lock and never block once instantiated.
+ *
+ * The personalization string (instance counter + creation time) keeps two instances seeded from
+ * the same entropy apart. Reseeding follows the DRBG's own reseed interval.
+ */
+public final class CryptoRandom {
+
+    private static final byte[] LABEL = "bluelocker/drbg/".getBytes(StandardCharsets.US_ASCII);
+    private static final AtomicLong INSTANCES = new AtomicLong();
+    private static final ThreadLocal<SecureRandom> LOCAL = ThreadLocal.withInitial(CryptoRandom::newInstance);
+
+    private CryptoRandom() {}
+
+    /** This thread's generator; never share it with another thread. */
+    public static SecureRandom current() {
+        return LOCAL.get();
+    }
+
+    public static void nextBytes(byte[] out) {
+        LOCAL.get().nextBytes(out);
+    }
+
+    public static byte[] bytes(int len) {
+        byte[] out = new byte[len];
+        LOCAL.get().nextBytes(out);
+        return out;
+    }
+
+    private static SecureRandom newInstance() {
+        byte[] personalization = ByteBuffer.allocate(LABEL.length + 16)
+                .put(LABEL)
+                .putLong(INSTANCES.incrementAndGet())
+                .putLong(System.nanoTime())
+                .array();
+        try {
+            return SecureRandom.getInstance("DRBG", DrbgParameters.instantiation(256, RESEED_ONLY, personalization));
+        } catch (NoSuchAlgorithmException e) {
+            // Provider without DRBG: still one instance per thread, no shared lock
+            return new SecureRandom();
+        }
+    }
+}
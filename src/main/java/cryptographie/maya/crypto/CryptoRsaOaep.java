@@ -11,7 +11,7 @@ public final class CryptoRsaOaep {
     public static byte[] encrypt(byte[] data, PublicKey publicKey) throws Exception {
         Objects.requireNonNull(data);
         Objects.requireNonNull(publicKey);
-        Cipher c = Cipher.getInstance("RSA/ECB/OAEPWithSHA-256AndMGF1Padding");
+        Cipher c = CipherCache.rsaOaep();
         c.init(Cipher.ENCRYPT_MODE, publicKey);
         return c.doFinal(data);
     }
@@ -19,8 +19,8 @@ public final class CryptoRsaOaep {
     public static byte[] decrypt(byte[] data, PrivateKey privateKey) throws Exception {
         Objects.requireNonNull(data);
         Objects.requireNonNull(privateKey);
-        Cipher c = Cipher.getInstance("RSA/ECB/OAEPWithSHA-256AndMGF1Padding");
+        Cipher c = CipherCache.rsaOaep();
         c.init(Cipher.DECRYPT_MODE, privateKey);
         return c.doFinal(data);
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,7 @@
 package cryptographie.maya.crypto;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 
@@ -9,8 +11,87 @@ public class CryptoService {
         return FileCryptoEnvelope.encryptForUser(plain, userPublicKey, userId, itemType );
     }
 
+    public FileCryptoEnvelope.EncryptedPayload encryptForUser(byte[] plain, DekWrapper wrapper, int userId, String itemType) throws Exception {
+        return FileCryptoEnvelope.encryptForUser(plain, wrapper, userId, itemType);
+    }
+
+    public FileCryptoEnvelope.WrappedKey encryptForUser(InputStream plain, OutputStream encrypted, PublicKey userPublicKey,
+                                                        int userId, String itemType) throws Exception {
+        return FileCryptoEnvelope.encryptForUser(plain, encrypted, userPublicKey, userId, itemType);
+    }
+
+    public FileCryptoEnvelope.WrappedKey encryptForUser(InputStream plain, OutputStream encrypted, DekWrapper wrapper,
+                                                        int userId, String itemType, ParallelSegmentCipher engine) throws Exception {
+        return FileCryptoEnvelope.encryptForUser(plain, encrypted, wrapper, userId, itemType, engine);
+    }
+
+    public FileCryptoEnvelope.SealingStream sealingStream(InputStream plain, DekWrapper wrapper, int userId, String itemType) throws Exception {
+        return FileCryptoEnvelope.sealingStream(plain, wrapper, userId, itemType);
+    }
+
+    public FileCryptoEnvelope.SealingStream sealingStream(InputStream plain, long plainSize, DekWrapper wrapper, int userId,
+                                                          String itemType, ParallelSegmentCipher engine) throws Exception {
+        return FileCryptoEnvelope.sealingStream(plain, plainSize, wrapper, userId, itemType, engine);
+    }
+
+    public byte[] rewrap(byte[] encryptedDek, DekWrapper from, DekWrapper to) throws Exception {
+        return FileCryptoEnvelope.rewrap(encryptedDek, from, to);
+    }
+
     public byte[] decryptForUser(byte[] encryptedData, byte[] iv, byte[] encryptedDek,
                                  PrivateKey userPrivateKey, int userId, String itemType) throws Exception {
         return FileCryptoEnvelope.decryptForUser(encryptedData, iv, encryptedDek, userPrivateKey, userId, itemType);
     }
-}
\ No newline at end of file
+
+    public byte[] decryptForUser(byte[] encryptedData, byte[] iv, byte[] encryptedDek, String dekAlg,
+                                 PrivateKey userPrivateKey, int userId, String itemType) throws Exception {
+        return FileCryptoEnvelope.decryptForUser(encryptedData, iv, encryptedDek, dekAlg, userPrivateKey, userId, itemType);
+    }
+
+    public byte[] decryptForUser(byte[] encryptedData, byte[] iv, byte[] encryptedDek, String dekAlg,
+                                 DekWrapper unwrapper, int userId, String itemType) throws Exception {
+        return FileCryptoEnvelope.decryptForUser(encryptedData, iv, encryptedDek, dekAlg, unwrapper, userId, itemType);
+    }
+
+    public InputStream decryptForUser(InputStream encryptedData, byte[] iv, byte[] encryptedDek, String dekAlg,
+                                      PrivateKey userPrivateKey, int userId, String itemType) throws Exception {
+        return FileCryptoEnvelope.decryptForUser(encryptedData, iv, encryptedDek, dekAlg, userPrivateKey, userId, itemType);
+    }
+
+    public InputStream decryptForUser(InputStream encryptedData, byte[] iv, byte[] encryptedDek, String dekAlg,
+                                      DekWrapper unwrapper, int userId, String itemType) throws Exception {
+        return FileCryptoEnvelope.decryptForUser(encryptedData, iv, encryptedDek, dekAlg, unwrapper, userId, itemType);
+    }
+
+    public ParallelSegmentCipher.Stats decryptForUser(InputStream encryptedData, OutputStream plain, byte[] encryptedDek, String dekAlg,
+                                                      DekWrapper unwrapper, int userId, String itemType,
+                                                      ParallelSegmentCipher engine) throws Exception {
+        return FileCryptoEnvelope.decryptForUser(encryptedData, plain, encryptedDek, dekAlg, unwrapper, userId, itemType, engine);
+    }
+
+    /** Compression achieved by the upload pipeline since start-up. */
+    public EnvelopeCompression.Stats compressionStats() {
+        return EnvelopeCompression.stats();
+    }
+
+    /** Occupancy of the off-heap key slots (overflows mean the pool is too small for the load). */
+    public SecretBufferPool.Stats secretBufferStats() {
+        return SecretBufferPool.shared().stats();
+    }
+
+    /** Measures AES-GCM vs ChaCha20-Poly1305 on this host and picks the content cipher for new items. */
+    public ContentCipher.Calibration calibrateContentCipher() {
+        return ContentCipher.calibrate();
+    }
+
+    /** Benchmarks the JCA providers for AES-GCM / RSA-OAEP and pins the fastest for this process. */
+    public ProviderCalibration.Report calibrateProviders() {
+        return ProviderCalibration.calibrate();
+    }
+
+    public byte[] readRange(StreamingAesGcm.RangeSource source, long ciphertextSize, byte[] iv, byte[] encryptedDek,
+                            String dekAlg, DekWrapper unwrapper, int userId, String itemType,
+                            long offset, int length) throws Exception {
+        return FileCryptoEnvelope.readRange(source, ciphertextSize, iv, encryptedDek, dekAlg, unwrapper, userId, itemType, offset, length);
+    }
+}
@@ -0,0 +1,95 @@
+package cryptographie.maya.crypto;
+
+import javax.crypto.KeyAgreement;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.NamedParameterSpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * ECIES-style key wrap on X25519: an ephemeral key agreement with the recipient's public key,
+ * HKDF-SHA256 over the shared secret, then AES-256-GCM of the wrapped key.
+ *
+ * Output: ephemeralPublic (32, raw) | AES-GCM(kek, zero nonce, key) -> 32 + len + 16 bytes
+ * (80 bytes for a DEK, vs 256 for RSA-2048). Each wrap uses a fresh ephemeral key, so the
+ * derived KEK is never reused and a fixed nonce is safe.
+ */
+public final class CryptoX25519 {
+    public static final String ALG = "X25519";
+    public static final int PUBLIC_KEY_LEN = 32;
+
+    // SubjectPublicKeyInfo prefix of every X.509-encoded X25519 key (OID 1.3.101.110)
+    private static final byte[] X509_PREFIX = {0x30, 0x2a, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x6e, 0x03, 0x21, 0x00};
+    private static final byte[] INFO = "bluelocker/ecies-x25519/v1".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ZERO_NONCE = new byte[CryptoAesGcm.IV_LEN];
+
+    private CryptoX25519() {}
+
+    public static KeyPair generateKeyPair() throws Exception {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance(ALG);
+        kpg.initialize(NamedParameterSpec.X25519, CryptoRandom.current());
+        return kpg.generateKeyPair();
+    }
+
+    public static byte[] wrap(byte[] key, PublicKey recipient) throws Exception {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(recipient);
+
+        KeyPair eph = generateKeyPair();
+        byte[] ephRaw = rawPublicKey(eph.getPublic());
+        byte[] kek = deriveKek(eph.getPrivate(), recipient, ephRaw);
+        try {
+            byte[] ct = CryptoAesGcm.encrypt(key, kek, ZERO_NONCE, ephRaw);
+            byte[] out = Arrays.copyOf(ephRaw, PUBLIC_KEY_LEN + ct.length);
+            System.arraycopy(ct, 0, out, PUBLIC_KEY_LEN, ct.length);
+            return out;
+        } finally {
+            Arrays.fill(kek, (byte) 0);
+        }
+    }
+
+    public static byte[] unwrap(byte[] wrapped, PrivateKey recipient) throws Exception {
+        Objects.requireNonNull(wrapped);
+        Objects.requireNonNull(recipient);
+        if (wrapped.length <= PUBLIC_KEY_LEN + CryptoAesGcm.TAG_LEN) throw new GeneralSecurityException("Wrapped key too short");
+
+        byte[] ephRaw = Arrays.copyOf(wrapped, PUBLIC_KEY_LEN);
+        byte[] kek = deriveKek(recipient, publicKeyFromRaw(ephRaw), ephRaw);
+        try {
+            return CryptoAesGcm.decrypt(Arrays.copyOfRange(wrapped, PUBLIC_KEY_LEN, wrapped.length), kek, ZERO_NONCE, ephRaw);
+        } finally {
+            Arrays.fill(kek, (byte) 0);
+        }
+    }
+
+    public static byte[] rawPublicKey(PublicKey pk) {
+        byte[] enc = pk.getEncoded();
+        return Arrays.copyOfRange(enc, enc.length - PUBLIC_KEY_LEN, enc.length);
+    }
+
+    public static PublicKey publicKeyFromRaw(byte[] raw) throws Exception {
+        if (raw.length != PUBLIC_KEY_LEN) throw new GeneralSecurityException("X25519 public key must be 32 bytes");
+        byte[] enc = Arrays.copyOf(X509_PREFIX, X509_PREFIX.length + PUBLIC_KEY_LEN);
+        System.arraycopy(raw, 0, enc, X509_PREFIX.length, PUBLIC_KEY_LEN);
+        return KeyFactory.getInstance(ALG).generatePublic(new X509EncodedKeySpec(enc));
+    }
+
+    private static byte[] deriveKek(PrivateKey own, PublicKey peer, byte[] ephRaw) throws Exception {
+        KeyAgreement ka = KeyAgreement.getInstance(ALG);
+        ka.init(own);
+        ka.doPhase(peer, true);
+        byte[] shared = ka.generateSecret(); // the JDK rejects small-order points
+        try {
+            return KeyDerivation.hkdf(ephRaw, shared, INFO, KeyDerivation.KEY_LEN);
+        } finally {
+            Arrays.fill(shared, (byte) 0);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package cryptographie.maya.crypto;
+
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Wraps and unwraps per-item DEKs. The {@link #alg()} value is what ends up in
+ * {@code secure_items.dek_alg} (plus the envelope format suffix), so decryption can pick
+ * the matching implementation.
+ *
+ * Wrappers holding symmetric key material ({@link #aesKw}) own a private copy of it and wipe it
+ * in {@link #close()}; public-key wrappers hold nothing to wipe.
+ */
+public interface DekWrapper extends AutoCloseable {
+
+    String alg();
+
+    byte[] wrap(byte[] dek) throws Exception;
+
+    byte[] unwrap(byte[] encryptedDek) throws Exception;
+
+    /** Wipes the key material this wrapper owns; using it afterwards fails. No-op by default. */
+    @Override
+    default void close() {}
+
+    /** Wraps a pooled DEK; by default through a heap copy wiped as soon as {@link #wrap(byte[])} returns. */
+    default byte[] wrap(SecretBuffer dek) throws Exception {
+        byte[] raw = dek.copy();
+        try {
+            return wrap(raw);
+        } finally {
+            Arrays.fill(raw, (byte) 0);
+        }
+    }
+
+    /** Unwraps into a {@link SecretBufferPool} slot; the caller closes the returned buffer. */
+    default SecretBuffer unwrapToBuffer(byte[] encryptedDek) throws Exception {
+        byte[] raw = unwrap(encryptedDek);
+        try {
+            return SecretBufferPool.shared().copyOf(raw);
+        } finally {
+            Arrays.fill(raw, (byte) 0);
+        }
+    }
+
+    /** Either key may be null when only one direction is needed. */
+    static DekWrapper rsaOaep(PublicKey publicKey, PrivateKey privateKey) {
+        return new DekWrapper() {
+            @Override
+            public String alg() {
+                return FileCryptoEnvelope.DEK_ALG_RSA_OAEP;
+            }
+
+            @Override
+            public byte[] wrap(byte[] dek) throws Exception {
+                if (publicKey == null) throw new IllegalStateException("RSA public key required to wrap");
+                return CryptoRsaOaep.encrypt(dek, publicKey);
+            }
+
+            @Override
+            public byte[] unwrap(byte[] encryptedDek) throws Exception {
+                if (privateKey == null) throw new IllegalStateException("RSA private key required to unwrap");
+                return CryptoRsaOaep.decrypt(encryptedDek, privateKey);
+            }
+        };
+    }
+
+    /** ECIES on X25519 (see {@link CryptoX25519}). Either key may be null when only one direction is needed. */
+    static DekWrapper x25519(PublicKey publicKey, PrivateKey privateKey) {
+        return new DekWrapper() {
+            @Override
+            public String alg() {
+                return FileCryptoEnvelope.DEK_ALG_X25519;
+            }
+
+            @Override
+            public byte[] wrap(byte[] dek) throws Exception {
+                if (publicKey == null) throw new IllegalStateException("X25519 public key required to wrap");
+                return CryptoX25519.wrap(dek, publicKey);
+            }
+
+            @Override
+            public byte[] unwrap(byte[] encryptedDek) throws Exception {
+                if (privateKey == null) throw new IllegalStateException("X25519 private key required to unwrap");
+                return CryptoX25519.unwrap(encryptedDek, privateKey);
+            }
+        };
+    }
+
+    /** Asymmetric wrapper matching the user's key type (RSA or X25519); either key may be null. */
+    static DekWrapper forUserKeys(PublicKey publicKey, PrivateKey privateKey) {
+        String keyAlg = publicKey != null ? publicKey.getAlgorithm()
+                : Objects.requireNonNull(privateKey, "a public or private key is required").getAlgorithm();
+        // The SunEC provider reports "XDH" for keys built from an encoding, "X25519" for generated ones
+        if ("XDH".equals(keyAlg) || CryptoX25519.ALG.equals(keyAlg)) return x25519(publicKey, privateKey);
+        return rsaOaep(publicKey, privateKey);
+    }
+
+    /**
+     * AES key wrap under a copy of {@code kek}: the caller keeps ownership of its array and may
+     * wipe it at any time (end of session) without affecting this wrapper. The copy is wiped by
+     * {@link #close()}, after which wrap/unwrap throw instead of running under an all-zero key.
+     */
+    static DekWrapper aesKw(String alg, byte[] kek) {
+        Objects.requireNonNull(alg);
+        byte[] key = Objects.requireNonNull(kek).clone();
+        return new DekWrapper() {
+            private volatile boolean closed;
+
+            @Override
+            public String alg() {
+                return alg;
+            }
+
+            @Override
+            public byte[] wrap(byte[] dek) throws Exception {
+                return KeyDerivation.wrapKey(key(), dek);
+            }
+
+            @Override
+            public byte[] wrap(SecretBuffer dek) throws Exception {
+                return KeyDerivation.wrapKey(key(), dek.key("AES"));
+            }
+
+            @Override
+            public byte[] unwrap(byte[] encryptedDek) throws Exception {
+                return KeyDerivation.unwrapKey(key(), encryptedDek);
+            }
+
+            @Override
+            public void close() {
+                closed = true;
+                Arrays.fill(key, (byte) 0);
+            }
+
+            private byte[] key() {
+                if (closed) throw new IllegalStateException("Key wrapper closed");
+                return key;
+            }
+        };
+    }
+}
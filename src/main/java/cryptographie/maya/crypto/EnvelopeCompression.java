@@ -0,0 +1,270 @@
+package cryptographie.maya.crypto;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.InflaterOutputStream;
+
+/**
+ * Compress-then-encrypt stage of {@link FileCryptoEnvelope}. Ciphertext does not compress, so
+ * this is the only place where notes, logs and documents can shrink before they hit the
+ * LONGBLOB column. The codec is recorded in the envelope header (see {@link StreamingAesGcm}).
+ *
+ * What to do is decided per item type ({@link Rule}); with {@code sample} set, the first
+ * {@link #SAMPLE_LEN} bytes are test-compressed first and data that doesn't shrink (JPEG, ZIP,
+ * video...) is stored as is. Items larger than {@link #MAX_SIZE} are never compressed.
+ * {@code -Dbluelocker.compression=off} disables the stage.
+ */
+public final class EnvelopeCompression {
+
+    public static final int CODEC_NONE = 0;
+    /** zlib-wrapped DEFLATE (java.util.zip). */
+    public static final int CODEC_DEFLATE = 1;
+
+    public static final int SAMPLE_LEN = 64 * 1024;
+    /** Below this size the zlib framing outweighs any gain. */
+    public static final int MIN_SIZE = 128;
+    /** The sample must shrink to at most this fraction of its size. */
+    public static final double MAX_SAMPLE_RATIO = 0.9;
+    /**
+     * Items above this size are stored uncompressed: a compressed envelope only inflates from its
+     * first byte, so a range read at offset X (resume, preview, seek) would cost O(X) instead of
+     * the overlapping segments. Below it, inflating from the start stays cheap.
+     * {@code -Dbluelocker.compression.maxBytes} overrides it.
+     */
+    public static final long MAX_SIZE = Long.getLong("bluelocker.compression.maxBytes", 4L * 1024 * 1024);
+
+    private static final boolean ENABLED = !"off".equalsIgnoreCase(System.getProperty("bluelocker.compression"));
+    private static final int BUF_LEN = 64 * 1024;
+
+    /** Codec and level for an item type; {@code sample} tests the data before compressing it. */
+    public record Rule(int codec, int level, boolean sample) {
+        public static final Rule NONE = new Rule(CODEC_NONE, 0, false);
+    }
+
+    public record Stats(long compressed, long skipped, long bytesIn, long bytesOut) {
+        /** Stored size / original size over the compressed items (1.0 when nothing was compressed). */
+        public double ratio() {
+            return bytesIn == 0 ? 1.0 : (double) bytesOut / bytesIn;
+        }
+
+        public long savedBytes() {
+            return bytesIn - bytesOut;
+        }
+    }
+
+    private static final Map<String, Rule> RULES = new ConcurrentHashMap<>(Map.of(
+            "note", new Rule(CODEC_DEFLATE, Deflater.DEFAULT_COMPRESSION, false), // text: always pays off
+            "file", new Rule(CODEC_DEFLATE, Deflater.BEST_SPEED, true)            // unknown content: sample first
+    ));
+
+    private static final AtomicLong compressed = new AtomicLong();
+    private static final AtomicLong skipped = new AtomicLong();
+    private static final AtomicLong bytesIn = new AtomicLong();
+    private static final AtomicLong bytesOut = new AtomicLong();
+
+    private EnvelopeCompression() {}
+
+    public static Rule ruleFor(String itemType) {
+        if (!ENABLED || itemType == null) return Rule.NONE;
+        return RULES.getOrDefault(itemType.toLowerCase(Locale.ROOT), Rule.NONE);
+    }
+
+    /** Item types are matched case-insensitively ({@code file}, {@code note}, ...). */
+    public static void setRule(String itemType, Rule rule) {
+        RULES.put(itemType.toLowerCase(Locale.ROOT), Objects.requireNonNull(rule));
+    }
+
+    public static Stats stats() {
+        return new Stats(compressed.get(), skipped.get(), bytesIn.get(), bytesOut.get());
+    }
+
+    // --- in memory ---
+
+    /** Result of {@link #compress}: {@code data} is the input itself when {@code codec} is NONE. */
+    public record Compressed(byte[] data, int codec) {}
+
+    /** Compresses per the item type's rule; keeps the original when it wouldn't get smaller. */
+    public static Compressed compress(byte[] plaintext, String itemType) {
+        Rule rule = ruleFor(itemType);
+        if (rule.codec() == CODEC_NONE || plaintext.length < MIN_SIZE || plaintext.length > MAX_SIZE) {
+            return new Compressed(plaintext, CODEC_NONE);
+        }
+        if (rule.sample() && !worthCompressing(plaintext, Math.min(plaintext.length, SAMPLE_LEN))) {
+            skipped.incrementAndGet();
+            return new Compressed(plaintext, CODEC_NONE);
+        }
+
+        Deflater deflater = new Deflater(rule.level());
+        try {
+            deflater.setInput(plaintext);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, plaintext.length / 2));
+            byte[] buf = new byte[BUF_LEN];
+            while (!deflater.finished()) {
+                out.write(buf, 0, deflater.deflate(buf));
+                if (out.size() >= plaintext.length) {
+                    skipped.incrementAndGet();
+                    return new Compressed(plaintext, CODEC_NONE);
+                }
+            }
+            record(plaintext.length, out.size());
+            return new Compressed(out.toByteArray(), CODEC_DEFLATE);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static byte[] decompress(byte[] data, int codec) throws IOException {
+        if (codec == CODEC_NONE) return data;
+        checkCodec(codec);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8, data.length * 3L));
+            byte[] buf = new byte[BUF_LEN];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) throw new IOException("Truncated compressed data");
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed data", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // --- streams ---
+
+    /**
+     * Compressing view of an upload stream. Call {@link #complete()} once it has been fully read
+     * to record the ratio; {@link #close()} releases the native deflater.
+     */
+    public static final class Source implements AutoCloseable {
+        private final InputStream stream;
+        private final int codec;
+        private final Deflater deflater;
+
+        private Source(InputStream stream, int codec, Deflater deflater) {
+            this.stream = stream;
+            this.codec = codec;
+            this.deflater = deflater;
+        }
+
+        public InputStream stream() {
+            return stream;
+        }
+
+        public int codec() {
+            return codec;
+        }
+
+        public void complete() {
+            if (deflater != null) record(deflater.getBytesRead(), deflater.getBytesWritten());
+        }
+
+        @Override
+        public void close() {
+            if (deflater != null) deflater.end();
+        }
+    }
+
+    /** Wraps {@code plaintext} per the item type's rule, sampling its head if required. */
+    public static Source compressing(InputStream plaintext, String itemType) throws IOException {
+        return compressing(plaintext, itemType, -1);
+    }
+
+    /** Same, passing {@code plaintext} through when {@code size} (-1 if unknown) exceeds {@link #MAX_SIZE}. */
+    public static Source compressing(InputStream plaintext, String itemType, long size) throws IOException {
+        Rule rule = ruleFor(itemType);
+        if (rule.codec() == CODEC_NONE || size > MAX_SIZE) return new Source(plaintext, CODEC_NONE, null);
+
+        BufferedInputStream in = new BufferedInputStream(plaintext, SAMPLE_LEN);
+        in.mark(SAMPLE_LEN);
+        byte[] sample = in.readNBytes(SAMPLE_LEN);
+        in.reset();
+        if (sample.length < MIN_SIZE || (rule.sample() && !worthCompressing(sample, sample.length))) {
+            if (sample.length >= MIN_SIZE) skipped.incrementAndGet();
+            return new Source(in, CODEC_NONE, null);
+        }
+        Deflater deflater = new Deflater(rule.level());
+        return new Source(new DeflaterInputStream(in, deflater, BUF_LEN), CODEC_DEFLATE, deflater);
+    }
+
+    /** Decompressing view of data decrypted from an envelope recorded with {@code codec}. */
+    public static InputStream decompressing(InputStream stored, int codec) {
+        if (codec == CODEC_NONE) return stored;
+        checkCodec(codec);
+        return new InflaterInputStream(stored, new Inflater(), BUF_LEN) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inf.end(); // custom Inflater: not ended by InflaterInputStream
+                }
+            }
+        };
+    }
+
+    /**
+     * Decompressing sink in front of {@code plaintext}. Closing the returned stream finishes the
+     * decompression but leaves {@code plaintext} open.
+     */
+    public static OutputStream decompressing(OutputStream plaintext, int codec) {
+        if (codec == CODEC_NONE) return plaintext;
+        checkCodec(codec);
+        return new InflaterOutputStream(plaintext, new Inflater(), BUF_LEN) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    finish();
+                    flush();
+                } finally {
+                    inf.end();
+                }
+            }
+        };
+    }
+
+    // --- internals ---
+
+    private static boolean worthCompressing(byte[] data, int len) {
+        Deflater probe = new Deflater(Deflater.BEST_SPEED);
+        try {
+            probe.setInput(data, 0, len);
+            probe.finish();
+            byte[] buf = new byte[BUF_LEN];
+            long limit = (long) (len * MAX_SAMPLE_RATIO);
+            long out = 0;
+            while (!probe.finished() && out <= limit) out += probe.deflate(buf);
+            return out <= limit;
+        } finally {
+            probe.end();
+        }
+    }
+
+    private static void record(long in, long out) {
+        compressed.incrementAndGet();
+        bytesIn.addAndGet(in);
+        bytesOut.addAndGet(out);
+    }
+
+    private static void checkCodec(int codec) {
+        if (codec != CODEC_DEFLATE) throw new IllegalArgumentException("Unknown compression codec: " + codec);
+    }
+}
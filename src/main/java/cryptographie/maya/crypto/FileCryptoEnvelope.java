@@ -1,56 +1,587 @@
 package cryptographie.maya.crypto;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.Arrays;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class FileCryptoEnvelope {
 
+    public static final String DEK_ALG_RSA_OAEP = "RSA-OAEP";
+    /** DEK wrapped with ECIES on X25519 (ephemeral ECDH + HKDF + AES-GCM, see {@link CryptoX25519}). */
+    public static final String DEK_ALG_X25519 = "ECIES-X25519";
+    /** DEK wrapped with AES-KW under a key derived from the user's master key (see {@link KeyDerivation}). */
+    public static final String DEK_ALG_AES_KW_UMK = "AES-KW-UMK";
+    /** Suffix appended to dekAlg when the stored ciphertext is a segmented envelope (see {@link StreamingAesGcm}). */
+    public static final String SEGMENTED_SUFFIX = "+SEG";
+    static final int SEAL_CHUNK = 64 * 1024;
+
     public record EncryptedPayload(byte[] iv, byte[] encryptedData, byte[] encryptedDek, String dekAlg) {}
 
+    /** Result of a streaming encryption: the ciphertext itself went to the caller's OutputStream. */
+    public record WrappedKey(byte[] iv, byte[] encryptedDek, String dekAlg) {}
+
     private FileCryptoEnvelope() {}
 
     // AAD optionnel mais recommandé: lie le ciphertext au user + type
+    private static final byte[] AAD_USER = "userId=".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] AAD_TYPE = ";type=".getBytes(StandardCharsets.US_ASCII);
+    private static final int AAD_TYPE_CACHE_MAX = 64;
+    private static final Map<String, byte[]> AAD_TYPES = new ConcurrentHashMap<>();
+
+    /**
+     * {@code "userId=<id>;type=<itemType>"} in UTF-8, byte-identical to what every stored item
+     * authenticates, written straight into one array: the encoded type suffix is cached per item
+     * type and the id digits are emitted without going through a String.
+     */
     public static byte[] buildAad(int userId, String itemType) {
-        String s = "userId=" + userId + ";type=" + itemType;
-        return s.getBytes(StandardCharsets.UTF_8);
+        byte[] type = typeSuffix(String.valueOf(itemType));
+        int digits = decimalLength(userId);
+        byte[] out = new byte[AAD_USER.length + digits + type.length];
+        System.arraycopy(AAD_USER, 0, out, 0, AAD_USER.length);
+        writeDecimal(userId, out, AAD_USER.length + digits);
+        System.arraycopy(type, 0, out, AAD_USER.length + digits, type.length);
+        return out;
+    }
+
+    private static byte[] typeSuffix(String itemType) {
+        byte[] cached = AAD_TYPES.get(itemType);
+        if (cached != null) return cached;
+        byte[] name = itemType.getBytes(StandardCharsets.UTF_8);
+        byte[] suffix = Arrays.copyOf(AAD_TYPE, AAD_TYPE.length + name.length);
+        System.arraycopy(name, 0, suffix, AAD_TYPE.length, name.length);
+        // A handful of item types exist; the bound only guards against arbitrary strings
+        if (AAD_TYPES.size() < AAD_TYPE_CACHE_MAX) AAD_TYPES.putIfAbsent(itemType, suffix);
+        return suffix;
+    }
+
+    private static int decimalLength(int v) {
+        long x = Math.abs((long) v);
+        int len = v < 0 ? 2 : 1;
+        while (x >= 10) {
+            x /= 10;
+            len++;
+        }
+        return len;
+    }
+
+    /** Writes {@code v} in decimal so that its last digit lands at {@code end - 1}. */
+    private static void writeDecimal(int v, byte[] out, int end) {
+        long x = Math.abs((long) v);
+        int pos = end;
+        do {
+            out[--pos] = (byte) ('0' + x % 10);
+            x /= 10;
+        } while (x > 0);
+        if (v < 0) out[--pos] = '-';
+    }
+
+    public static boolean isSegmented(String dekAlg) {
+        return dekAlg != null && dekAlg.endsWith(SEGMENTED_SUFFIX);
+    }
+
+    /** Wrapping part of a dekAlg, e.g. {@code RSA-OAEP} for {@code RSA-OAEP+SEG}. */
+    public static String wrapAlgOf(String dekAlg) {
+        if (dekAlg == null) return DEK_ALG_RSA_OAEP; // rows written before dek_alg was filled
+        return isSegmented(dekAlg) ? dekAlg.substring(0, dekAlg.length() - SEGMENTED_SUFFIX.length()) : dekAlg;
+    }
+
+    /** Same envelope format, different wrapping algorithm. */
+    public static String withWrapAlg(String dekAlg, String wrapAlg) {
+        return isSegmented(dekAlg) ? wrapAlg + SEGMENTED_SUFFIX : wrapAlg;
     }
 
+    // --- encryption ---
+
     public static EncryptedPayload encryptForUser(byte[] plaintext, PublicKey userPublicKey, int userId, String itemType) throws Exception {
+        Objects.requireNonNull(userPublicKey);
+        return encryptForUser(plaintext, DekWrapper.forUserKeys(userPublicKey, null), userId, itemType);
+    }
+
+    public static EncryptedPayload encryptForUser(byte[] plaintext, DekWrapper wrapper, int userId, String itemType) throws Exception {
+        return encryptForUser(plaintext, wrapper, userId, itemType, ContentCipher.forNewItems());
+    }
+
+    /** Same, sealing the item with {@code cipher} instead of the host's calibrated choice. */
+    public static EncryptedPayload encryptForUser(byte[] plaintext, DekWrapper wrapper, int userId, String itemType,
+                                                  ContentCipher cipher) throws Exception {
         Objects.requireNonNull(plaintext);
+        Objects.requireNonNull(wrapper);
+
+        // Off-heap DEK, wiped when the block exits
+        try (SecretBuffer dek = SecretBufferPool.shared().newDek()) {
+            byte[] noncePrefix = StreamingAesGcm.noncePrefixForFreshKey();
+            byte[] aad = buildAad(userId, itemType);
+
+            EnvelopeCompression.Compressed packed = EnvelopeCompression.compress(plaintext, itemType);
+            byte[] encryptedData = StreamingAesGcm.encrypt(packed.data(), dek, noncePrefix, aad,
+                    StreamingAesGcm.segmentSizeForNewItems(), packed.codec(), cipher);
+            byte[] encryptedDek = wrapper.wrap(dek);
+
+            return new EncryptedPayload(noncePrefix, encryptedData, encryptedDek, wrapper.alg() + SEGMENTED_SUFFIX);
+        }
+    }
+
+    /**
+     * Streams {@code plaintext} into {@code ciphertext} as a segmented envelope; memory use is one
+     * segment whatever the size. The data is compressed first when the item type's
+     * {@link EnvelopeCompression} rule says so. Both streams are closed on return.
+     */
+    public static WrappedKey encryptForUser(InputStream plaintext, OutputStream ciphertext, PublicKey userPublicKey,
+                                            int userId, String itemType) throws Exception {
         Objects.requireNonNull(userPublicKey);
+        return encryptForUser(plaintext, ciphertext, DekWrapper.forUserKeys(userPublicKey, null), userId, itemType, null);
+    }
 
-        byte[] dek = CryptoAesGcm.newDek();
-        try {
-            byte[] iv = CryptoAesGcm.newIv();
+    /**
+     * Same as above; when {@code engine} is non-null the segments are sealed on its worker pool
+     * (identical output, multi-core throughput).
+     */
+    public static WrappedKey encryptForUser(InputStream plaintext, OutputStream ciphertext, DekWrapper wrapper,
+                                            int userId, String itemType, ParallelSegmentCipher engine) throws Exception {
+        return encryptForUser(plaintext, ciphertext, wrapper, userId, itemType, engine, ContentCipher.forNewItems());
+    }
+
+    /** Same, sealing the item with {@code cipher} instead of the host's calibrated choice. */
+    public static WrappedKey encryptForUser(InputStream plaintext, OutputStream ciphertext, DekWrapper wrapper,
+                                            int userId, String itemType, ParallelSegmentCipher engine,
+                                            ContentCipher cipher) throws Exception {
+        Objects.requireNonNull(plaintext);
+        Objects.requireNonNull(ciphertext);
+        Objects.requireNonNull(wrapper);
+
+        try (SecretBuffer dek = SecretBufferPool.shared().newDek();
+             InputStream raw = plaintext; EnvelopeCompression.Source source = EnvelopeCompression.compressing(raw, itemType)) {
+            byte[] noncePrefix = StreamingAesGcm.noncePrefixForFreshKey();
             byte[] aad = buildAad(userId, itemType);
+            byte[] encryptedDek = wrapper.wrap(dek);
 
-            byte[] encryptedData = CryptoAesGcm.encrypt(plaintext, dek, iv, aad);
-            byte[] encryptedDek = CryptoRsaOaep.encrypt(dek, userPublicKey);
+            if (engine != null) {
+                try (OutputStream out = ciphertext) {
+                    engine.encrypt(source.stream(), out, dek, noncePrefix, aad, StreamingAesGcm.segmentSizeForNewItems(), source.codec(), cipher);
+                }
+            } else {
+                try (OutputStream out = StreamingAesGcm.newEncryptingStream(ciphertext, dek, noncePrefix, aad,
+                        StreamingAesGcm.segmentSizeForNewItems(), source.codec(), cipher)) {
+                    source.stream().transferTo(out);
+                }
+            }
+            source.complete();
+            return new WrappedKey(noncePrefix, encryptedDek, wrapper.alg() + SEGMENTED_SUFFIX);
+        }
+    }
+
+    /**
+     * Pull-based counterpart of the streaming {@code encryptForUser}: the envelope is produced as
+     * {@link SealingStream} is read (e.g. by a JDBC {@code setBinaryStream}), so the ciphertext
+     * never exists whole in memory. The keys are known before the first byte, the caller can
+     * store them alongside. Closing the stream closes {@code plaintext}.
+     */
+    public static SealingStream sealingStream(InputStream plaintext, DekWrapper wrapper, int userId, String itemType) throws Exception {
+        return sealingStream(plaintext, -1, wrapper, userId, itemType, null);
+    }
 
-            return new EncryptedPayload(iv, encryptedData, encryptedDek, "RSA-OAEP");
-        } finally {
-            // Wipe the DEK from memory as soon as possible
-            if (dek != null) Arrays.fill(dek, (byte) 0);
+    /**
+     * Same; {@code plaintextSize} (-1 if unknown) lets large items skip compression so they keep
+     * cheap range reads (see {@link EnvelopeCompression#MAX_SIZE}). When {@code engine} is non-null
+     * the segments are sealed ahead of the reader on its worker pool, at most its window of
+     * segments at a time (identical output).
+     */
+    public static SealingStream sealingStream(InputStream plaintext, long plaintextSize, DekWrapper wrapper, int userId,
+                                              String itemType, ParallelSegmentCipher engine) throws Exception {
+        return sealingStream(plaintext, plaintextSize, wrapper, userId, itemType, engine, ContentCipher.forNewItems());
+    }
+
+    public static SealingStream sealingStream(InputStream plaintext, long plaintextSize, DekWrapper wrapper, int userId,
+                                              String itemType, ParallelSegmentCipher engine, ContentCipher cipher) throws Exception {
+        Objects.requireNonNull(plaintext);
+        Objects.requireNonNull(wrapper);
+
+        EnvelopeCompression.Source source = EnvelopeCompression.compressing(plaintext, itemType, plaintextSize);
+        try (SecretBuffer dek = SecretBufferPool.shared().newDek()) {
+            byte[] noncePrefix = StreamingAesGcm.noncePrefixForFreshKey();
+            WrappedKey key = new WrappedKey(noncePrefix, wrapper.wrap(dek), wrapper.alg() + SEGMENTED_SUFFIX);
+            SealingStream sealed = new SealingStream(plaintext, source, key);
+            // The sealers keep their own key copy, the pooled DEK is released on return
+            if (engine != null) {
+                sealed.segments = engine.sealing(source.stream(), dek, noncePrefix, buildAad(userId, itemType),
+                        StreamingAesGcm.segmentSizeForNewItems(), source.codec(), cipher);
+            } else {
+                sealed.sealer = StreamingAesGcm.newEncryptingStream(sealed.pending, dek, noncePrefix, buildAad(userId, itemType),
+                        StreamingAesGcm.segmentSizeForNewItems(), source.codec(), cipher);
+            }
+            return sealed;
+        } catch (Exception e) {
+            source.close();
+            plaintext.close();
+            throw e;
         }
     }
 
-    public static byte[] decryptForUser(byte[] encryptedData, byte[] iv, byte[] encryptedDek,
+    /**
+     * Envelope bytes, sealed on demand: each refill reads {@value #SEAL_CHUNK} plaintext bytes,
+     * so at most about one segment of ciphertext is buffered. With an engine, refills take the
+     * next sealed segment instead and the engine's window bounds the buffering.
+     */
+    public static final class SealingStream extends InputStream {
+        private final InputStream plaintext;
+        private final EnvelopeCompression.Source source;
+        private final WrappedKey key;
+        private final Pending pending = new Pending();
+        private final byte[] chunk = new byte[SEAL_CHUNK];
+        private OutputStream sealer;
+        private ParallelSegmentCipher.Sealer segments;
+        private byte[] piece;
+        private int piecePos;
+
+        private SealingStream(InputStream plaintext, EnvelopeCompression.Source source, WrappedKey key) {
+            this.plaintext = plaintext;
+            this.source = source;
+            this.key = key;
+        }
+
+        /** Nonce prefix, wrapped DEK and dekAlg to store with the ciphertext. */
+        public WrappedKey key() {
+            return key;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (len == 0) return 0;
+            if (segments != null || piece != null) return readSegments(b, off, len);
+            while (pending.isEmpty()) {
+                if (sealer == null) return -1;
+                int n = source.stream().read(chunk);
+                if (n < 0) {
+                    sealer.close(); // seals the final segment
+                    sealer = null;
+                    source.complete();
+                } else {
+                    sealer.write(chunk, 0, n);
+                }
+            }
+            return pending.drain(b, off, len);
+        }
+
+        private int readSegments(byte[] b, int off, int len) throws IOException {
+            while (piece == null || piecePos == piece.length) {
+                if (segments == null) return -1;
+                try {
+                    piece = segments.next();
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException("Sealing failed", e);
+                }
+                piecePos = 0;
+                if (piece == null) {
+                    segments = null;
+                    source.complete();
+                    piece = new byte[0];
+                }
+            }
+            int n = Math.min(len, piece.length - piecePos);
+            System.arraycopy(piece, piecePos, b, off, n);
+            piecePos += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            sealer = null;
+            if (segments != null) {
+                segments.close();
+                segments = null;
+            }
+            Arrays.fill(chunk, (byte) 0);
+            try {
+                source.close();
+            } finally {
+                plaintext.close();
+            }
+        }
+    }
+
+    /** Ciphertext sealed but not read yet; drained in place, reset once empty. */
+    private static final class Pending extends ByteArrayOutputStream {
+        private int pos;
+
+        boolean isEmpty() {
+            return pos >= count;
+        }
+
+        int drain(byte[] b, int off, int len) {
+            int n = Math.min(len, count - pos);
+            System.arraycopy(buf, pos, b, off, n);
+            pos += n;
+            if (pos == count) {
+                pos = 0;
+                count = 0;
+            }
+            return n;
+        }
+    }
+
+    // --- key re-wrap ---
+
+    /**
+     * Re-wraps a DEK from one scheme to another without touching the item ciphertext.
+     * Returns the new encrypted DEK; the plaintext DEK only lives inside this call.
+     */
+    public static byte[] rewrap(byte[] encryptedDek, DekWrapper from, DekWrapper to) throws Exception {
+        Objects.requireNonNull(encryptedDek);
+        try (SecretBuffer dek = from.unwrapToBuffer(encryptedDek)) {
+            return to.wrap(dek);
+        }
+    }
+
+    // --- decryption ---
+
+    /**
+     * Decrypts an item whatever its format: segmented envelopes are detected through the
+     * {@code +SEG} dekAlg suffix, anything else is the legacy single-shot AES-GCM blob.
+     */
+    public static byte[] decryptForUser(byte[] encryptedData, byte[] iv, byte[] encryptedDek, String dekAlg,
                                         PrivateKey userPrivateKey, int userId, String itemType) throws Exception {
+        Objects.requireNonNull(userPrivateKey);
+        return decryptForUser(encryptedData, iv, encryptedDek, dekAlg, DekWrapper.forUserKeys(null, userPrivateKey), userId, itemType);
+    }
+
+    public static byte[] decryptForUser(byte[] encryptedData, byte[] iv, byte[] encryptedDek, String dekAlg,
+                                        DekWrapper unwrapper, int userId, String itemType) throws Exception {
         Objects.requireNonNull(encryptedData);
-        Objects.requireNonNull(iv);
         Objects.requireNonNull(encryptedDek);
-        Objects.requireNonNull(userPrivateKey);
+        checkWrapAlg(dekAlg, unwrapper);
 
-        byte[] dek = null;
-        try {
+        try (SecretBuffer dek = unwrapper.unwrapToBuffer(encryptedDek)) {
             byte[] aad = buildAad(userId, itemType);
-            dek = CryptoRsaOaep.decrypt(encryptedDek, userPrivateKey);
+            if (isSegmented(dekAlg)) {
+                int codec = StreamingAesGcm.codecOf(encryptedData);
+                byte[] stored = StreamingAesGcm.decrypt(encryptedData, dek, aad);
+                if (codec == EnvelopeCompression.CODEC_NONE) return stored;
+                try {
+                    return EnvelopeCompression.decompress(stored, codec);
+                } finally {
+                    Arrays.fill(stored, (byte) 0);
+                }
+            }
+            Objects.requireNonNull(iv);
             return CryptoAesGcm.decrypt(encryptedData, dek, iv, aad);
-        } finally {
-            if (dek != null) Arrays.fill(dek, (byte) 0);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns a plaintext stream over {@code ciphertext}. Segmented items are decrypted lazily,
+     * one segment at a time; legacy single-shot items are read fully then decrypted.
+     */
+    public static InputStream decryptForUser(InputStream ciphertext, byte[] iv, byte[] encryptedDek, String dekAlg,
+                                             PrivateKey userPrivateKey, int userId, String itemType) throws Exception {
+        Objects.requireNonNull(userPrivateKey);
+        return decryptForUser(ciphertext, iv, encryptedDek, dekAlg, DekWrapper.forUserKeys(null, userPrivateKey), userId, itemType);
+    }
+
+    public static InputStream decryptForUser(InputStream ciphertext, byte[] iv, byte[] encryptedDek, String dekAlg,
+                                             DekWrapper unwrapper, int userId, String itemType) throws Exception {
+        Objects.requireNonNull(ciphertext);
+        Objects.requireNonNull(encryptedDek);
+
+        if (!isSegmented(dekAlg)) {
+            try (InputStream in = ciphertext) {
+                return new ByteArrayInputStream(decryptForUser(in.readAllBytes(), iv, encryptedDek, dekAlg, unwrapper, userId, itemType));
+            }
+        }
+
+        checkWrapAlg(dekAlg, unwrapper);
+        InputStream in = ciphertext.markSupported() ? ciphertext : new BufferedInputStream(ciphertext);
+        int codec = StreamingAesGcm.codecOf(in);
+        try (SecretBuffer dek = unwrapper.unwrapToBuffer(encryptedDek)) {
+            // The stream keeps its own key copy, the pooled DEK can be released right away
+            return EnvelopeCompression.decompressing(StreamingAesGcm.newDecryptingStream(in, dek, buildAad(userId, itemType)), codec);
+        }
+    }
+
+    /**
+     * Decrypts a segmented item from {@code ciphertext} into {@code plaintext} on
+     * {@code engine}'s worker pool, decompressing if needed (the returned byte count is the
+     * stored, possibly compressed, size). Neither stream is closed.
+     */
+    public static ParallelSegmentCipher.Stats decryptForUser(InputStream ciphertext, OutputStream plaintext, byte[] encryptedDek, String dekAlg,
+                                                            DekWrapper unwrapper, int userId, String itemType,
+                                                            ParallelSegmentCipher engine) throws Exception {
+        Objects.requireNonNull(engine);
+        Objects.requireNonNull(encryptedDek);
+        if (!isSegmented(dekAlg)) throw new IllegalArgumentException("Parallel decryption requires a segmented envelope (dekAlg=" + dekAlg + ")");
+        checkWrapAlg(dekAlg, unwrapper);
+
+        InputStream in = ciphertext.markSupported() ? ciphertext : new BufferedInputStream(ciphertext);
+        int codec = StreamingAesGcm.codecOf(in);
+        OutputStream sink = EnvelopeCompression.decompressing(plaintext, codec);
+        try (SecretBuffer dek = unwrapper.unwrapToBuffer(encryptedDek)) {
+            ParallelSegmentCipher.Stats stats = engine.decrypt(in, sink, dek, buildAad(userId, itemType));
+            if (sink != plaintext) sink.close(); // finishes decompression, plaintext stays open
+            return stats;
+        }
+    }
+
+    /**
+     * Plaintext bytes {@code [offset, offset + length)} of a stored item, truncated at its end.
+     * Uncompressed segmented items only fetch and authenticate the overlapping segments;
+     * compressed ones (at most {@link EnvelopeCompression#MAX_SIZE} for new items) are decrypted
+     * and inflated from the start, fetched chunk by chunk, up to the end of the range; legacy
+     * single-shot items are fetched and decrypted whole.
+     */
+    public static byte[] readRange(StreamingAesGcm.RangeSource source, long ciphertextSize, byte[] iv, byte[] encryptedDek,
+                                   String dekAlg, DekWrapper unwrapper, int userId, String itemType,
+                                   long offset, int length) throws Exception {
+        Objects.requireNonNull(source);
+        Objects.requireNonNull(encryptedDek);
+        if (offset < 0 || length < 0) throw new IllegalArgumentException("offset and length must be >= 0");
+        checkWrapAlg(dekAlg, unwrapper);
+
+        if (!isSegmented(dekAlg)) {
+            byte[] all = decryptForUser(source.read(0, Math.toIntExact(ciphertextSize)), iv, encryptedDek, dekAlg, unwrapper, userId, itemType);
+            try {
+                if (offset >= all.length) return new byte[0];
+                return Arrays.copyOfRange(all, (int) offset, (int) Math.min(all.length, offset + length));
+            } finally {
+                Arrays.fill(all, (byte) 0);
+            }
+        }
+
+        StreamingAesGcm.Header header = StreamingAesGcm.parseHeader(
+                source.read(0, (int) Math.min(ciphertextSize, StreamingAesGcm.MAX_HEADER_LEN)));
+        byte[] aad = buildAad(userId, itemType);
+        try (SecretBuffer dek = unwrapper.unwrapToBuffer(encryptedDek)) {
+            if (header.codec() == EnvelopeCompression.CODEC_NONE) {
+                return StreamingAesGcm.decryptRange(source, ciphertextSize, header, cc -> cc.key(dek), aad, offset, length);
+            }
+            InputStream ct = new BufferedInputStream(new RangeSourceStream(source, ciphertextSize), RANGE_CHUNK);
+            try (InputStream plain = EnvelopeCompression.decompressing(StreamingAesGcm.newDecryptingStream(ct, dek, aad), header.codec())) {
+                for (long toSkip = offset; toSkip > 0; ) {
+                    long n = plain.skip(toSkip);
+                    if (n <= 0) {
+                        if (plain.read() < 0) return new byte[0]; // offset past the end
+                        n = 1;
+                    }
+                    toSkip -= n;
+                }
+                return plain.readNBytes(length);
+            }
+        }
+    }
+
+    // --- integrity checks (no user session involved) ---
+
+    /**
+     * Cheap structural check of a stored item: known dekAlg, wrapped DEK size consistent with its
+     * algorithm, and for segmented items a well-formed header (read from {@code head}) whose nonce
+     * prefix matches the stored IV and a segment layout matching {@code ciphertextSize}.
+     * No key is needed; authentication is left to {@link #verify}.
+     */
+    public static void checkStructure(byte[] head, long ciphertextSize, byte[] iv, byte[] encryptedDek, String dekAlg)
+            throws GeneralSecurityException {
+        if (encryptedDek == null) throw new GeneralSecurityException("Missing wrapped DEK");
+        String wrapAlg = wrapAlgOf(dekAlg);
+        int dekLen = encryptedDek.length;
+        boolean dekOk = switch (wrapAlg) {
+            case DEK_ALG_AES_KW_UMK -> dekLen == CryptoAesGcm.DEK_LEN + 8;
+            case DEK_ALG_X25519 -> dekLen == CryptoX25519.PUBLIC_KEY_LEN + CryptoAesGcm.DEK_LEN + CryptoAesGcm.TAG_LEN;
+            case DEK_ALG_RSA_OAEP -> dekLen >= 128 && dekLen % 8 == 0;
+            default -> throw new GeneralSecurityException("Unknown dekAlg: " + dekAlg);
+        };
+        if (!dekOk) throw new GeneralSecurityException("Wrapped DEK length " + dekLen + " invalid for " + wrapAlg);
+
+        if (!isSegmented(dekAlg)) {
+            if (iv == null || iv.length != CryptoAesGcm.IV_LEN) throw new GeneralSecurityException("Invalid IV");
+            if (ciphertextSize < CryptoAesGcm.TAG_LEN) throw new GeneralSecurityException("Ciphertext shorter than a GCM tag");
+            return;
+        }
+        byte[] noncePrefix = StreamingAesGcm.checkLayout(head, ciphertextSize);
+        if (!Arrays.equals(noncePrefix, iv)) throw new GeneralSecurityException("Header nonce prefix does not match stored IV");
+    }
+
+    /**
+     * Full authenticated decryption of a stored item, streamed from {@code source} in
+     * {@link #RANGE_CHUNK} reads and discarded; compressed data is inflated too. Returns the
+     * plaintext size. Any corruption surfaces as an exception.
+     */
+    public static long verify(StreamingAesGcm.RangeSource source, long ciphertextSize, byte[] iv, byte[] encryptedDek,
+                              String dekAlg, DekWrapper unwrapper, int userId, String itemType) throws Exception {
+        Objects.requireNonNull(source);
+        InputStream ct = new BufferedInputStream(new RangeSourceStream(source, ciphertextSize), RANGE_CHUNK);
+        try (InputStream plain = decryptForUser(ct, iv, encryptedDek, dekAlg, unwrapper, userId, itemType)) {
+            return plain.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    private static final int RANGE_CHUNK = 1024 * 1024;
+
+    /** Sequential view of a {@link StreamingAesGcm.RangeSource}, fetched lazily. */
+    private static final class RangeSourceStream extends InputStream {
+        private final StreamingAesGcm.RangeSource source;
+        private final long size;
+        private long pos;
+
+        RangeSourceStream(StreamingAesGcm.RangeSource source, long size) {
+            this.source = source;
+            this.size = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (pos >= size) return -1;
+            if (len == 0) return 0;
+            byte[] chunk;
+            try {
+                chunk = source.read(pos, (int) Math.min(len, size - pos));
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Ciphertext read failed at offset " + pos, e);
+            }
+            if (chunk.length == 0) throw new EOFException("Ciphertext shorter than expected");
+            System.arraycopy(chunk, 0, b, off, chunk.length);
+            pos += chunk.length;
+            return chunk.length;
+        }
+    }
+
+    /** Legacy single-shot format (dekAlg {@code RSA-OAEP}): one AES-GCM blob, IV stored separately. */
+    public static byte[] decryptForUser(byte[] encryptedData, byte[] iv, byte[] encryptedDek,
+                                        PrivateKey userPrivateKey, int userId, String itemType) throws Exception {
+        return decryptForUser(encryptedData, iv, encryptedDek, DEK_ALG_RSA_OAEP, userPrivateKey, userId, itemType);
+    }
+
+    private static void checkWrapAlg(String dekAlg, DekWrapper unwrapper) {
+        Objects.requireNonNull(unwrapper);
+        String wrapAlg = wrapAlgOf(dekAlg);
+        if (!wrapAlg.equals(unwrapper.alg())) {
+            throw new IllegalArgumentException("DEK wrapped with " + wrapAlg + ", unwrapper is " + unwrapper.alg());
+        }
+    }
+}
@@ -1,4 +1,96 @@
 package cryptographie.maya.crypto;
 
-public class KeyDerivation {
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Symmetric key hierarchy helpers: HKDF-SHA256 (RFC 5869) to derive purpose-bound keys from a
+ * user master key, and AES key wrap (RFC 3394) to wrap per-item DEKs under those keys.
+ */
+public final class KeyDerivation {
+    public static final int KEY_LEN = 32;
+    /** AES-KW output for a 32-byte DEK (64-bit integrity block + key). */
+    public static final int WRAPPED_KEY_LEN = KEY_LEN + 8;
+
+    private static final String HMAC = "HmacSHA256";
+    private static final int HASH_LEN = 32;
+    private static final byte[] DEK_WRAP_INFO = "bluelocker/dek-wrap/v1".getBytes(StandardCharsets.US_ASCII);
+
+    private KeyDerivation() {}
+
+    public static byte[] hkdfExtract(byte[] salt, byte[] ikm) throws Exception {
+        Objects.requireNonNull(ikm);
+        Mac mac = Mac.getInstance(HMAC);
+        mac.init(new SecretKeySpec(salt == null || salt.length == 0 ? new byte[HASH_LEN] : salt, HMAC));
+        return mac.doFinal(ikm);
+    }
+
+    public static byte[] hkdfExpand(byte[] prk, byte[] info, int length) throws Exception {
+        Objects.requireNonNull(prk);
+        if (length <= 0 || length > 255 * HASH_LEN) throw new IllegalArgumentException("Invalid HKDF length: " + length);
+        Mac mac = Mac.getInstance(HMAC);
+        mac.init(new SecretKeySpec(prk, HMAC));
+
+        byte[] out = new byte[length];
+        byte[] t = new byte[0];
+        int pos = 0;
+        for (int i = 1; pos < length; i++) {
+            mac.update(t);
+            if (info != null) mac.update(info);
+            mac.update((byte) i);
+            byte[] next = mac.doFinal();
+            Arrays.fill(t, (byte) 0);
+            t = next;
+            int n = Math.min(t.length, length - pos);
+            System.arraycopy(t, 0, out, pos, n);
+            pos += n;
+        }
+        Arrays.fill(t, (byte) 0);
+        return out;
+    }
+
+    public static byte[] hkdf(byte[] salt, byte[] ikm, byte[] info, int length) throws Exception {
+        byte[] prk = hkdfExtract(salt, ikm);
+        try {
+            return hkdfExpand(prk, info, length);
+        } finally {
+            Arrays.fill(prk, (byte) 0);
+        }
+    }
+
+    /** KEK used to wrap the DEKs of one user, bound to the user id so keys can't be swapped across accounts. */
+    public static byte[] deriveDekWrappingKey(byte[] masterKey, int userId) throws Exception {
+        byte[] salt = new byte[]{(byte) (userId >>> 24), (byte) (userId >>> 16), (byte) (userId >>> 8), (byte) userId};
+        return hkdf(salt, masterKey, DEK_WRAP_INFO, KEY_LEN);
+    }
+
+    public static byte[] wrapKey(byte[] kek, byte[] key) throws Exception {
+        Objects.requireNonNull(kek);
+        Objects.requireNonNull(key);
+        Cipher c = CipherCache.aesKw();
+        c.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(kek, "AES"));
+        return c.doFinal(key);
+    }
+
+    /** Same as {@link #wrapKey(byte[], byte[])} for a key object (e.g. a {@link SecretBuffer} view). */
+    public static byte[] wrapKey(byte[] kek, Key key) throws Exception {
+        Objects.requireNonNull(kek);
+        Objects.requireNonNull(key);
+        Cipher c = CipherCache.aesKw();
+        c.init(Cipher.WRAP_MODE, new SecretKeySpec(kek, "AES"));
+        return c.wrap(key);
+    }
+
+    public static byte[] unwrapKey(byte[] kek, byte[] wrappedKey) throws Exception {
+        Objects.requireNonNull(kek);
+        Objects.requireNonNull(wrappedKey);
+        Cipher c = CipherCache.aesKw();
+        c.init(Cipher.DECRYPT_MODE, new SecretKeySpec(kek, "AES"));
+        return c.doFinal(wrappedKey);
+    }
 }
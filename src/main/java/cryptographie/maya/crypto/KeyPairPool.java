@@ -0,0 +1,134 @@
+package cryptographie.maya.crypto;
+
+import java.security.KeyPair;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of pre-generated RSA key pairs. 2048-bit generation takes hundreds of milliseconds with
+ * a long tail; doing it on background threads ahead of time makes sign-up latency flat.
+ *
+ * Pairs live only in memory. When the number of ready pairs drops to the low watermark, refill
+ * tasks are queued up to {@code depth}; if the pool is empty, {@link #take()} generates inline.
+ */
+public final class KeyPairPool implements AutoCloseable {
+
+    private static volatile KeyPairPool shared;
+
+    public record Stats(long served, long pooled, long inline, long generated, double avgGenerationMillis,
+                        int available, int depth) {}
+
+    private final int depth;
+    private final int lowWatermark;
+    private final BlockingQueue<KeyPair> ready;
+    private final ExecutorService workers;
+    private final AtomicInteger scheduled = new AtomicInteger();
+
+    private final AtomicLong pooled = new AtomicLong();
+    private final AtomicLong inline = new AtomicLong();
+    private final AtomicLong generated = new AtomicLong();
+    private final AtomicLong generationNanos = new AtomicLong();
+
+    public KeyPairPool(int depth, int lowWatermark, int threads) {
+        if (depth < 1) throw new IllegalArgumentException("depth must be >= 1");
+        if (lowWatermark < 0 || lowWatermark >= depth) throw new IllegalArgumentException("lowWatermark must be in [0, depth)");
+        if (threads < 1) throw new IllegalArgumentException("threads must be >= 1");
+        this.depth = depth;
+        this.lowWatermark = lowWatermark;
+        this.ready = new ArrayBlockingQueue<>(depth);
+        AtomicInteger n = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "rsa-keygen-" + n.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    /**
+     * Process-wide pool. Depth comes from {@code -Dbluelocker.keypool.depth} (default 4), refill
+     * starts at half depth and runs on up to one thread per core.
+     */
+    public static KeyPairPool shared() {
+        KeyPairPool p = shared;
+        if (p == null) {
+            synchronized (KeyPairPool.class) {
+                p = shared;
+                if (p == null) {
+                    int depth = Math.max(1, Integer.getInteger("bluelocker.keypool.depth", 4));
+                    int threads = Math.min(depth, Runtime.getRuntime().availableProcessors());
+                    shared = p = new KeyPairPool(depth, depth / 2, threads);
+                }
+            }
+        }
+        return p;
+    }
+
+    /** Fills the pool in the background (e.g. at application start-up). */
+    public KeyPairPool warmUp() {
+        schedule(depth);
+        return this;
+    }
+
+    public KeyPair take() throws Exception {
+        KeyPair kp = ready.poll();
+        if (kp != null) {
+            pooled.incrementAndGet();
+        } else {
+            inline.incrementAndGet();
+            kp = generate();
+        }
+        if (ready.size() <= lowWatermark) schedule(depth);
+        return kp;
+    }
+
+    public Stats stats() {
+        long gen = generated.get();
+        double avg = gen == 0 ? 0 : generationNanos.get() / 1_000_000.0 / gen;
+        return new Stats(pooled.get() + inline.get(), pooled.get(), inline.get(), gen, avg, ready.size(), depth);
+    }
+
+    private void schedule(int target) {
+        while (true) {
+            int s = scheduled.get();
+            int missing = target - ready.size() - s;
+            if (missing <= 0) return;
+            if (!scheduled.compareAndSet(s, s + 1)) continue;
+            try {
+                workers.execute(this::refillOne);
+            } catch (RejectedExecutionException e) {
+                scheduled.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private void refillOne() {
+        try {
+            ready.offer(generate());
+        } catch (Exception e) {
+            System.err.println("RSA key pre-generation failed: " + e.getMessage());
+        } finally {
+            scheduled.decrementAndGet();
+        }
+    }
+
+    private KeyPair generate() throws Exception {
+        long start = System.nanoTime();
+        KeyPair kp = RsaKeyManager.generateKeyPair();
+        generationNanos.addAndGet(System.nanoTime() - start);
+        generated.incrementAndGet();
+        return kp;
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+        ready.clear();
+    }
+}
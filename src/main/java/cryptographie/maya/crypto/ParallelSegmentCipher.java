@@ -0,0 +1,287 @@
+package cryptographie.maya.crypto;
+
+import javax.crypto.SecretKey;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Multi-core engine for the {@link StreamingAesGcm} format. Segments are independent (each
+ * nonce only depends on the segment index), so they are sealed/opened on a work-stealing pool
+ * and written back in order. The output is byte-for-byte the one of the sequential streams.
+ *
+ * At most {@code window} segments are in flight, which caps memory to roughly
+ * {@code 2 * window * segmentSize} whatever the file size.
+ */
+public final class ParallelSegmentCipher implements AutoCloseable {
+
+    private static volatile ParallelSegmentCipher shared;
+
+    private final ForkJoinPool pool;
+    private final int parallelism;
+    private final int window;
+
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    public record Stats(long plaintextBytes, long segments, long nanos, int parallelism) {
+        public double mbPerSecond() {
+            return nanos == 0 ? 0 : (plaintextBytes / 1_000_000.0) / (nanos / 1_000_000_000.0);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d bytes, %d segments, %.1f ms, %.1f MB/s (x%d)",
+                    plaintextBytes, segments, nanos / 1_000_000.0, mbPerSecond(), parallelism);
+        }
+    }
+
+    public ParallelSegmentCipher() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelSegmentCipher(int parallelism) {
+        this(parallelism, parallelism * 4);
+    }
+
+    public ParallelSegmentCipher(int parallelism, int window) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism must be >= 1");
+        if (window < parallelism) throw new IllegalArgumentException("window must be >= parallelism");
+        this.parallelism = parallelism;
+        this.window = window;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /** Process-wide engine sized on the available cores (lazy, daemon threads). */
+    public static ParallelSegmentCipher shared() {
+        ParallelSegmentCipher s = shared;
+        if (s == null) {
+            synchronized (ParallelSegmentCipher.class) {
+                s = shared;
+                if (s == null) shared = s = new ParallelSegmentCipher();
+            }
+        }
+        return s;
+    }
+
+    public int parallelism() {
+        return parallelism;
+    }
+
+    /** Cumulative throughput of every call made on this engine. */
+    public Stats totals() {
+        return new Stats(totalBytes.get(), 0, totalNanos.get(), parallelism);
+    }
+
+    /** Encrypts {@code in} into {@code out} (header included). Neither stream is closed. */
+    public Stats encrypt(InputStream in, OutputStream out, byte[] dek, byte[] noncePrefix, byte[] aad, int segmentSize) throws Exception {
+        return encrypt(in, out, dek, noncePrefix, aad, segmentSize, EnvelopeCompression.CODEC_NONE);
+    }
+
+    /** Same, recording {@code codec} in the header ({@code in} already yields compressed data). */
+    public Stats encrypt(InputStream in, OutputStream out, byte[] dek, byte[] noncePrefix, byte[] aad, int segmentSize, int codec) throws Exception {
+        return encrypt(in, out, dek, noncePrefix, aad, segmentSize, codec, ContentCipher.AES_GCM);
+    }
+
+    /** Same, sealing the segments with {@code cipher} (recorded in the header). */
+    public Stats encrypt(InputStream in, OutputStream out, byte[] dek, byte[] noncePrefix, byte[] aad, int segmentSize, int codec,
+                         ContentCipher cipher) throws Exception {
+        return encrypt(in, out, cipher.key(dek), noncePrefix, aad, segmentSize, codec, cipher);
+    }
+
+    /** Same, with a pooled DEK; the lease must stay open until this returns. */
+    public Stats encrypt(InputStream in, OutputStream out, SecretBuffer dek, byte[] noncePrefix, byte[] aad, int segmentSize, int codec,
+                         ContentCipher cipher) throws Exception {
+        return encrypt(in, out, cipher.key(dek), noncePrefix, aad, segmentSize, codec, cipher);
+    }
+
+    private Stats encrypt(InputStream in, OutputStream out, SecretKey key, byte[] noncePrefix, byte[] aad, int segmentSize, int codec,
+                          ContentCipher cipher) throws Exception {
+        Objects.requireNonNull(out);
+        try (Sealer sealer = new Sealer(in, key, noncePrefix, aad, segmentSize, codec, cipher)) {
+            for (byte[] ct = sealer.next(); ct != null; ct = sealer.next()) out.write(ct);
+            return sealer.stats();
+        }
+    }
+
+    /**
+     * Pull-based counterpart of {@code encrypt}, for consumers that read the envelope (e.g. a JDBC
+     * {@code setBinaryStream}). The sealer keeps its own key copy, so the lease may end before it.
+     */
+    public Sealer sealing(InputStream in, SecretBuffer dek, byte[] noncePrefix, byte[] aad, int segmentSize, int codec,
+                          ContentCipher cipher) throws Exception {
+        return new Sealer(in, cipher.detachedKey(dek), noncePrefix, aad, segmentSize, codec, cipher);
+    }
+
+    /**
+     * Envelope produced on demand: each {@link #next()} returns the next piece in order (header,
+     * then one sealed segment), keeping up to {@code window} segments sealing ahead on the pool.
+     * {@code in} is not closed.
+     */
+    public final class Sealer implements AutoCloseable {
+        private final InputStream in;
+        private final SecretKey key;
+        private final ContentCipher cipher;
+        private final int segmentSize;
+        private final byte[] prefix;
+        private final byte[] segAad;
+        private final ArrayDeque<Future<byte[]>> inflight = new ArrayDeque<>();
+        private final long start = System.nanoTime();
+        private byte[] header;
+        private byte[] pending;
+        private boolean sealedLast;
+        private long index;
+        private long bytes;
+        private Stats stats;
+
+        private Sealer(InputStream in, SecretKey key, byte[] noncePrefix, byte[] aad, int segmentSize, int codec,
+                       ContentCipher cipher) throws Exception {
+            this.in = Objects.requireNonNull(in);
+            this.key = key;
+            this.cipher = cipher;
+            this.segmentSize = segmentSize;
+            StreamingAesGcm.Header h = StreamingAesGcm.newHeader(segmentSize, noncePrefix, codec, cipher, key);
+            this.header = h.encoded();
+            this.prefix = h.noncePrefix();
+            this.segAad = StreamingAesGcm.segmentAad(h.encoded(), aad);
+        }
+
+        /** Next envelope bytes, or {@code null} once the final segment has been returned. */
+        public byte[] next() throws Exception {
+            if (header != null) {
+                byte[] h = header;
+                header = null;
+                return h;
+            }
+            while (!sealedLast && inflight.size() < window) submitNext();
+            if (inflight.isEmpty()) {
+                if (stats == null) stats = record(bytes, index, System.nanoTime() - start);
+                return null;
+            }
+            return await(inflight.poll());
+        }
+
+        /** Totals of this envelope; complete once {@link #next()} has returned {@code null}. */
+        public Stats stats() {
+            return stats != null ? stats : new Stats(bytes, index, System.nanoTime() - start, parallelism);
+        }
+
+        private void submitNext() throws IOException {
+            if (pending == null) pending = in.readNBytes(segmentSize);
+            // Read one segment ahead: the current one is the last only if nothing follows
+            byte[] next = pending.length < segmentSize ? new byte[0] : in.readNBytes(segmentSize);
+            boolean last = next.length == 0;
+            byte[] chunk = pending;
+            long i = index++;
+            bytes += chunk.length;
+            inflight.add(pool.submit(() -> {
+                byte[] ct = new byte[chunk.length + StreamingAesGcm.TAG_LEN];
+                StreamingAesGcm.seal(cipher.cipher(), cipher, key, prefix, i, last, segAad, chunk, 0, chunk.length, ct, 0);
+                Arrays.fill(chunk, (byte) 0);
+                return ct;
+            }));
+            pending = next;
+            sealedLast = last;
+        }
+
+        /** Cancels the segments still sealing; the envelope is incomplete if {@link #next()} had not returned {@code null}. */
+        @Override
+        public void close() {
+            inflight.forEach(f -> f.cancel(true));
+            inflight.clear();
+            if (pending != null) Arrays.fill(pending, (byte) 0);
+            sealedLast = true;
+        }
+    }
+
+    /** Decrypts a segmented envelope from {@code in} into {@code out}, data as stored. Neither stream is closed. */
+    public Stats decrypt(InputStream in, OutputStream out, byte[] dek, byte[] aad) throws Exception {
+        return decrypt(in, out, cc -> cc.key(dek), aad);
+    }
+
+    /** Same, with a pooled DEK; the lease must stay open until this returns. */
+    public Stats decrypt(InputStream in, OutputStream out, SecretBuffer dek, byte[] aad) throws Exception {
+        return decrypt(in, out, cc -> cc.key(dek), aad);
+    }
+
+    private Stats decrypt(InputStream in, OutputStream out, Function<ContentCipher, SecretKey> keys, byte[] aad) throws Exception {
+        Objects.requireNonNull(in);
+        Objects.requireNonNull(out);
+        long start = System.nanoTime();
+
+        StreamingAesGcm.Header header = StreamingAesGcm.readHeader(in);
+        int segmentSize = header.segmentSize();
+        byte[] prefix = header.noncePrefix();
+        byte[] segAad = StreamingAesGcm.segmentAad(header.encoded(), aad);
+        ContentCipher cipher = header.cipher();
+        SecretKey key = keys.apply(cipher);
+        StreamingAesGcm.checkKeyId(header, key);
+        int fullSeg = segmentSize + StreamingAesGcm.TAG_LEN;
+
+        ArrayDeque<Future<byte[]>> inflight = new ArrayDeque<>();
+        long index = 0;
+        long bytes = 0;
+        try {
+            byte[] pending = in.readNBytes(fullSeg);
+            while (true) {
+                if (pending.length < StreamingAesGcm.TAG_LEN) throw new EOFException("Truncated segmented envelope");
+                byte[] next = pending.length < fullSeg ? new byte[0] : in.readNBytes(fullSeg);
+                boolean last = next.length == 0;
+                byte[] chunk = pending;
+                long i = index++;
+                bytes += chunk.length - StreamingAesGcm.TAG_LEN;
+
+                if (inflight.size() >= window) writeAndWipe(out, await(inflight.poll()));
+                inflight.add(pool.submit(() -> {
+                    byte[] pt = new byte[chunk.length - StreamingAesGcm.TAG_LEN];
+                    StreamingAesGcm.open(cipher.cipher(), cipher, key, prefix, i, last, segAad, chunk, 0, chunk.length, pt, 0);
+                    return pt;
+                }));
+
+                if (last) break;
+                pending = next;
+            }
+            while (!inflight.isEmpty()) writeAndWipe(out, await(inflight.poll()));
+        } finally {
+            inflight.forEach(f -> f.cancel(true));
+        }
+        return record(bytes, index, System.nanoTime() - start);
+    }
+
+    private Stats record(long bytes, long segments, long nanos) {
+        totalBytes.addAndGet(bytes);
+        totalNanos.addAndGet(nanos);
+        return new Stats(bytes, segments, nanos, parallelism);
+    }
+
+    private static void writeAndWipe(OutputStream out, byte[] plaintext) throws IOException {
+        out.write(plaintext);
+        Arrays.fill(plaintext, (byte) 0);
+    }
+
+    private static byte[] await(Future<byte[]> f) throws Exception {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof GeneralSecurityException gse) throw gse;
+            if (cause instanceof IOException ioe) throw ioe;
+            throw new IOException("Segment task failed", cause);
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,231 @@
+package cryptographie.maya.crypto;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.Provider;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Picks, for this process, the JCA provider of the AES-GCM path ({@link CryptoAesGcm},
+ * {@link StreamingAesGcm}) and of the RSA-OAEP path ({@link CryptoRsaOaep}), plus the segment
+ * size of new envelopes. Every installed provider implementing the transformation is measured
+ * on this host; the winners are pinned in {@link CipherCache}.
+ *
+ * AES-GCM is measured as envelope segments of each candidate size (init + AAD + doFinal, as
+ * {@code StreamingAesGcm.seal} does). The smallest size within {@link #SEGMENT_TOLERANCE} of
+ * the best throughput wins: larger segments cost memory and make range reads decrypt more.
+ * RSA-OAEP is ranked on unwrap (private key) operations, the one on the read path.
+ */
+public final class ProviderCalibration {
+    static final int[] SEGMENT_SIZES = {16 * 1024, 64 * 1024, 256 * 1024};
+    static final double SEGMENT_TOLERANCE = 0.05;
+
+    private static final long WARMUP_NANOS = 100_000_000L;
+    private static final long MEASURE_NANOS = 150_000_000L;
+
+    private static volatile Report lastReport;
+
+    private ProviderCalibration() {}
+
+    /** One provider/size combination; {@code opsPerSecond} counts segments or RSA operations. */
+    public record Measurement(String transformation, String provider, int bufferSize, String operation,
+                              double mbPerSecond, double opsPerSecond) {
+    }
+
+    /** Everything measured and what was pinned; {@link #toString()} is the capacity-planning report. */
+    public record Report(List<Measurement> measurements, String aesGcmProvider, int segmentSize,
+                         String rsaOaepProvider, long millis) {
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("Crypto provider calibration (%s %s, %d cores, Java %s, %d ms)%n",
+                    System.getProperty("os.name"), System.getProperty("os.arch"),
+                    Runtime.getRuntime().availableProcessors(), System.getProperty("java.version"), millis));
+            sb.append(String.format("  %-40s %-12s %-8s %8s %10s %12s%n",
+                    "transformation", "provider", "op", "buffer", "MB/s", "ops/s"));
+            for (Measurement m : measurements) {
+                sb.append(String.format("  %-40s %-12s %-8s %8s %10.1f %12.0f%n",
+                        m.transformation(), m.provider(), m.operation(),
+                        m.bufferSize() == 0 ? "-" : m.bufferSize() / 1024 + "K", m.mbPerSecond(), m.opsPerSecond()));
+            }
+            return sb.append(String.format("  pinned: AES-GCM %s, %d KiB segments; RSA-OAEP %s",
+                    aesGcmProvider, segmentSize / 1024, rsaOaepProvider)).toString();
+        }
+    }
+
+    /** Result of the last {@link #calibrate()}, null if it never ran. */
+    public static Report lastReport() {
+        return lastReport;
+    }
+
+    /** Measures every candidate (~0.25 s each) and pins the fastest ones for the process. */
+    public static Report calibrate() {
+        long start = System.nanoTime();
+        List<Measurement> all = new ArrayList<>();
+
+        Measurement bestAes = null;
+        Provider aesProvider = null;
+        int segmentSize = StreamingAesGcm.segmentSizeForNewItems();
+        for (Provider p : providersOf(CipherCache.AES_GCM)) {
+            List<Measurement> sizes = new ArrayList<>();
+            for (int size : SEGMENT_SIZES) {
+                try {
+                    sizes.add(measureAesGcm(p, size));
+                } catch (GeneralSecurityException e) {
+                    // provider refuses this key or size: left out of the choice
+                }
+            }
+            all.addAll(sizes);
+            Measurement best = sizes.stream().max(Comparator.comparingDouble(Measurement::mbPerSecond)).orElse(null);
+            if (best != null && (bestAes == null || best.mbPerSecond() > bestAes.mbPerSecond())) {
+                bestAes = best;
+                aesProvider = p;
+                double floor = best.mbPerSecond() * (1 - SEGMENT_TOLERANCE);
+                segmentSize = sizes.stream().filter(m -> m.mbPerSecond() >= floor)
+                        .mapToInt(Measurement::bufferSize).min().orElse(best.bufferSize());
+            }
+        }
+
+        Measurement bestRsa = null;
+        Provider rsaProvider = null;
+        try {
+            KeyPair pair = RsaKeyManager.generateKeyPair();
+            for (Provider p : providersOf(CipherCache.RSA_OAEP)) {
+                try {
+                    all.add(measureRsaOaep(p, pair, Cipher.ENCRYPT_MODE));
+                    Measurement unwrap = measureRsaOaep(p, pair, Cipher.DECRYPT_MODE);
+                    all.add(unwrap);
+                    if (bestRsa == null || unwrap.opsPerSecond() > bestRsa.opsPerSecond()) {
+                        bestRsa = unwrap;
+                        rsaProvider = p;
+                    }
+                } catch (GeneralSecurityException e) {
+                    // provider does not accept keys from the default KeyPairGenerator
+                }
+            }
+        } catch (Exception e) {
+            // no RSA key pair generator: RSA-OAEP stays on the JCA default
+        }
+
+        if (aesProvider != null) {
+            CipherCache.pin(CipherCache.AES_GCM, aesProvider);
+            StreamingAesGcm.segmentSizeForNewItems(segmentSize);
+        }
+        if (rsaProvider != null) CipherCache.pin(CipherCache.RSA_OAEP, rsaProvider);
+
+        Report report = new Report(all, nameOf(CipherCache.AES_GCM), StreamingAesGcm.segmentSizeForNewItems(),
+                nameOf(CipherCache.RSA_OAEP), (System.nanoTime() - start) / 1_000_000);
+        lastReport = report;
+        return report;
+    }
+
+    /**
+     * Runs {@link #calibrate()} then {@link ContentCipher#calibrate()} (on the pinned providers)
+     * on a daemon thread and prints both reports (application startup).
+     */
+    public static void calibrateInBackground() {
+        Thread t = new Thread(() -> {
+            System.out.println(calibrate());
+            System.out.println(ContentCipher.calibrate());
+        }, "crypto-calibration");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+    }
+
+    private static Measurement measureAesGcm(Provider p, int segmentSize) throws GeneralSecurityException {
+        Cipher c = Cipher.getInstance(CipherCache.AES_GCM, p);
+        SecretKeySpec key = new SecretKeySpec(CryptoAesGcm.newDek(), "AES");
+        byte[] pt = CryptoRandom.bytes(segmentSize);
+        byte[] ct = new byte[segmentSize + CryptoAesGcm.TAG_LEN];
+        byte[] aad = new byte[StreamingAesGcm.MAX_HEADER_LEN];
+        byte[] prefix = CryptoRandom.bytes(StreamingAesGcm.NONCE_PREFIX_LEN);
+
+        // GCM refuses to encrypt twice under one nonce: every segment gets its own index
+        long index = 0;
+        for (long end = System.nanoTime() + WARMUP_NANOS; System.nanoTime() < end; ) {
+            sealSegment(c, key, prefix, index++, aad, pt, ct);
+        }
+        long start = System.nanoTime();
+        long segments = 0;
+        long elapsed;
+        do {
+            sealSegment(c, key, prefix, index++, aad, pt, ct);
+            segments++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < MEASURE_NANOS);
+
+        double seconds = elapsed / 1_000_000_000.0;
+        return new Measurement(CipherCache.AES_GCM, p.getName(), segmentSize, "seal",
+                segments * (double) segmentSize / 1_000_000.0 / seconds, segments / seconds);
+    }
+
+    private static void sealSegment(Cipher c, SecretKeySpec key, byte[] prefix, long index, byte[] aad,
+                                    byte[] pt, byte[] ct) throws GeneralSecurityException {
+        c.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(CryptoAesGcm.TAG_LEN * 8,
+                StreamingAesGcm.segmentNonce(prefix, index, false)));
+        c.updateAAD(aad);
+        c.doFinal(pt, 0, pt.length, ct, 0);
+    }
+
+    private static Measurement measureRsaOaep(Provider p, KeyPair pair, int mode) throws GeneralSecurityException {
+        Cipher c = Cipher.getInstance(CipherCache.RSA_OAEP, p);
+        byte[] dek = CryptoAesGcm.newDek();
+        c.init(Cipher.ENCRYPT_MODE, pair.getPublic());
+        byte[] wrapped = c.doFinal(dek);
+
+        boolean unwrap = mode == Cipher.DECRYPT_MODE;
+        for (long end = System.nanoTime() + WARMUP_NANOS; System.nanoTime() < end; ) {
+            rsaOnce(c, pair, unwrap, dek, wrapped);
+        }
+        long start = System.nanoTime();
+        long ops = 0;
+        long elapsed;
+        do {
+            rsaOnce(c, pair, unwrap, dek, wrapped);
+            ops++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < MEASURE_NANOS);
+
+        double seconds = elapsed / 1_000_000_000.0;
+        return new Measurement(CipherCache.RSA_OAEP, p.getName(), 0, unwrap ? "unwrap" : "wrap",
+                ops * (double) CryptoAesGcm.DEK_LEN / 1_000_000.0 / seconds, ops / seconds);
+    }
+
+    private static void rsaOnce(Cipher c, KeyPair pair, boolean unwrap, byte[] dek, byte[] wrapped) throws GeneralSecurityException {
+        if (unwrap) {
+            c.init(Cipher.DECRYPT_MODE, pair.getPrivate());
+            c.doFinal(wrapped);
+        } else {
+            c.init(Cipher.ENCRYPT_MODE, pair.getPublic());
+            c.doFinal(dek);
+        }
+    }
+
+    private static List<Provider> providersOf(String transformation) {
+        List<Provider> providers = new ArrayList<>();
+        for (Provider p : Security.getProviders()) {
+            try {
+                Cipher.getInstance(transformation, p);
+                providers.add(p);
+            } catch (GeneralSecurityException e) {
+                // not implemented by this provider
+            }
+        }
+        return providers;
+    }
+
+    private static String nameOf(String transformation) {
+        try {
+            return CipherCache.provider(transformation).getName();
+        } catch (GeneralSecurityException e) {
+            return "unavailable";
+        }
+    }
+}
@@ -7,33 +7,76 @@ import java.nio.file.attribute.PosixFilePermissions;
 import java.security.*;
 import java.security.spec.*;
 import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 
+/**
+ * User key pairs. Historically RSA only; X25519 pairs (faster keygen/unwrap, 80-byte wrapped
+ * DEKs) are also supported. Each user picks the type at registration and keeps it across key
+ * rotations; stored keys are decoded by the factory their encoding's algorithm identifier names.
+ */
 public final class RsaKeyManager {
     private static final String ALG = "RSA";
     private static final int BITS = 2048;
 
+    /** Key types a user can pick at registration. */
+    public static final List<String> USER_KEY_ALGS = List.of(ALG, CryptoX25519.ALG);
+
+    /** Type proposed to new users: {@code -Dbluelocker.userKeyAlg=RSA|X25519} (default RSA). */
+    public static final String DEFAULT_USER_KEY_ALG = System.getProperty("bluelocker.userKeyAlg", ALG).toUpperCase(Locale.ROOT);
+
     private RsaKeyManager() {}
 
     public static KeyPair generateKeyPair() throws Exception {
         KeyPairGenerator kpg = KeyPairGenerator.getInstance(ALG);
-        kpg.initialize(BITS);
+        kpg.initialize(BITS, CryptoRandom.current());
         return kpg.generateKeyPair();
     }
 
+    /** Key pair of the default type, see {@link #newUserKeyPair(String)}. */
+    public static KeyPair newUserKeyPair() throws Exception {
+        return newUserKeyPair(DEFAULT_USER_KEY_ALG);
+    }
+
+    /** Key pair of one of {@link #USER_KEY_ALGS} (RSA comes from the pre-generation pool). */
+    public static KeyPair newUserKeyPair(String keyAlg) throws Exception {
+        String alg = keyAlg.toUpperCase(Locale.ROOT);
+        if (CryptoX25519.ALG.equals(alg)) return CryptoX25519.generateKeyPair();
+        if (ALG.equals(alg)) return KeyPairPool.shared().take();
+        throw new IllegalArgumentException("Unsupported user key type: " + keyAlg + " (expected one of " + USER_KEY_ALGS + ")");
+    }
+
+    /** Entry of {@link #USER_KEY_ALGS} for an existing key, e.g. to rotate a user's pair without changing its type. */
+    public static String userKeyAlgOf(Key key) {
+        // The SunEC provider reports "XDH" for keys built from an encoding, "X25519" for generated ones
+        String alg = key.getAlgorithm();
+        if ("XDH".equals(alg) || CryptoX25519.ALG.equals(alg)) return CryptoX25519.ALG;
+        if (ALG.equals(alg)) return ALG;
+        throw new IllegalArgumentException("Unsupported user key type: " + alg);
+    }
+
     public static String publicKeyToBase64(PublicKey pk) {
         return Base64.getEncoder().encodeToString(pk.getEncoded()); // X.509
     }
 
     public static PublicKey publicKeyFromBase64(String b64) throws Exception {
         byte[] bytes = Base64.getDecoder().decode(b64);
-        return KeyFactory.getInstance(ALG).generatePublic(new X509EncodedKeySpec(bytes));
+        return decode(kf -> kf.generatePublic(new X509EncodedKeySpec(bytes)));
     }
 
     public static void savePrivateKey(String username, PrivateKey privateKey) throws IOException {
-        Path dir = Paths.get("keys");
-        Files.createDirectories(dir);
-        Path file = dir.resolve(username + ".pk8");
+        writePrivateKey(privateKeyFile(username), privateKey);
+    }
+
+    /** keys/&lt;username&gt;.pk8 */
+    public static Path privateKeyFile(String username) {
+        return Paths.get("keys").resolve(username + ".pk8");
+    }
+
+    /** Writes a PKCS#8 key to {@code file} with owner-only permissions where supported. */
+    public static void writePrivateKey(Path file, PrivateKey privateKey) throws IOException {
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
         // Set file permissions after creation if possible (POSIX)
         Files.write(file, privateKey.getEncoded(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
         try {
@@ -46,11 +89,32 @@ public final class RsaKeyManager {
     }
 
     public static PrivateKey loadPrivateKey(String username) throws Exception {
-        Path file = Paths.get("keys").resolve(username + ".pk8");
+        Path file = privateKeyFile(username);
         if (!Files.exists(file)) {
             throw new IllegalStateException("Private key file not found for user '" + username + "' at: " + file.toAbsolutePath());
         }
         byte[] bytes = Files.readAllBytes(file);
-        return KeyFactory.getInstance(ALG).generatePrivate(new PKCS8EncodedKeySpec(bytes));
+        return decode(kf -> kf.generatePrivate(new PKCS8EncodedKeySpec(bytes)));
+    }
+
+    private interface KeyDecoder<K> {
+        K decode(KeyFactory factory) throws InvalidKeySpecException;
+    }
+
+    /**
+     * X.509 and PKCS#8 encodings carry the key's algorithm OID, and each factory rejects an OID
+     * that isn't its own: the first supported type that accepts the encoding is the right one.
+     */
+    private static <K> K decode(KeyDecoder<K> decoder) throws GeneralSecurityException {
+        InvalidKeySpecException failure = null;
+        for (String alg : USER_KEY_ALGS) {
+            try {
+                return decoder.decode(KeyFactory.getInstance(alg));
+            } catch (InvalidKeySpecException e) {
+                if (failure == null) failure = new InvalidKeySpecException("Key is none of " + USER_KEY_ALGS);
+                failure.addSuppressed(e);
+            }
+        }
+        throw failure;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,101 @@
+package cryptographie.maya.crypto;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Lease on off-heap key material from a {@link SecretBufferPool}. Closing it zeroes the bytes
+ * and returns the slot; any use afterwards fails with {@link IllegalStateException} rather than
+ * reading whatever secret the slot holds next.
+ *
+ * Reads ({@link #key}, {@link #copy()}) are safe from several threads at once, e.g. the segment
+ * tasks of a {@link ParallelSegmentCipher}; the lease must outlive them.
+ */
+public final class SecretBuffer implements AutoCloseable {
+    private final SecretBufferPool pool;
+    private final int slot;
+    private final int length;
+    private volatile ByteBuffer view;
+
+    SecretBuffer(SecretBufferPool pool, int slot, ByteBuffer view, int length) {
+        this.pool = pool;
+        this.slot = slot;
+        this.view = view;
+        this.length = length;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /** Read-write view on the secret (position 0, limit {@link #length()}); invalid once closed. */
+    public ByteBuffer buffer() {
+        return open().duplicate().clear().limit(length);
+    }
+
+    /** Heap copy for APIs that only take arrays: wipe it as soon as the call returns. */
+    public byte[] copy() {
+        byte[] out = new byte[length];
+        open().get(0, out, 0, length);
+        return out;
+    }
+
+    /**
+     * Key backed by this buffer, for {@code Cipher.init} while the lease is open. Providers read it
+     * through {@link SecretKey#getEncoded()}, which copies on every call as the JCA expects; that
+     * heap copy is not wiped by this class (see {@link SecretBufferPool}).
+     */
+    public SecretKey key(String algorithm) {
+        Objects.requireNonNull(algorithm);
+        return new View(this, algorithm);
+    }
+
+    /** Heap key independent of this lease, for objects that outlive it (e.g. decrypting streams). */
+    public SecretKeySpec detachedKey(String algorithm) {
+        byte[] raw = copy();
+        try {
+            return new SecretKeySpec(raw, algorithm);
+        } finally {
+            Arrays.fill(raw, (byte) 0);
+        }
+    }
+
+    void put(byte[] src, int off, int len) {
+        if (len != length) throw new IllegalArgumentException("expected " + length + " bytes, got " + len);
+        open().put(0, src, off, len);
+    }
+
+    @Override
+    public synchronized void close() {
+        ByteBuffer v = view;
+        if (v == null) return;
+        view = null;
+        pool.release(slot, v);
+    }
+
+    private ByteBuffer open() {
+        ByteBuffer v = view;
+        if (v == null) throw new IllegalStateException("Secret buffer already released");
+        return v;
+    }
+
+    private record View(SecretBuffer buffer, String algorithm) implements SecretKey {
+        @Override
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        @Override
+        public String getFormat() {
+            return "RAW";
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return buffer.copy();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package cryptographie.maya.crypto;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-slot off-heap storage for key material (DEKs, KEKs). One direct slab of
+ * {@code slots * SLOT_SIZE} bytes is allocated up front; {@link #acquire} hands out a slot as a
+ * {@link SecretBuffer} and {@link SecretBuffer#close()} zeroes it before it can be reused.
+ * Keys therefore never sit in collectable heap arrays between uses, and every copy has an
+ * explicit end of life (the try-with-resources block of the operation using it).
+ *
+ * Slots are claimed with a CAS on a bitmap, no lock and no allocation. When every slot is taken
+ * a standalone direct buffer is handed out instead (counted in {@link Stats#overflows()}),
+ * zeroed on close as well; callers never block.
+ *
+ * The guarantee stops at the JCA boundary. {@code Cipher.init} reads the key through
+ * {@link SecretBuffer#key}, whose {@code getEncoded()} returns a fresh heap copy each time;
+ * that copy and the key schedule the provider derives from it are the provider's to wipe, and
+ * nothing here does. The per-thread ciphers of {@link CipherCache} also keep the schedule of
+ * their last key until their next {@code init}. So a key can still leave heap residue there
+ * until the GC reclaims or the provider overwrites it; the pool only bounds the copies this
+ * code makes.
+ */
+public final class SecretBufferPool {
+    /** Largest secret a slot holds: a 256-bit key with room to spare. */
+    public static final int SLOT_SIZE = 64;
+
+    private static final int DEFAULT_SLOTS = Integer.getInteger("bluelocker.secretSlots", 256);
+    private static volatile SecretBufferPool shared;
+
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[SLOT_SIZE]);
+
+    private final int slots;
+    private final ByteBuffer[] views;
+    private final AtomicLongArray used;
+
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicLong leases = new AtomicLong();
+    private final AtomicLong overflows = new AtomicLong();
+
+    public record Stats(int slots, int inUse, long leases, long overflows) {
+        @Override
+        public String toString() {
+            return String.format("%d/%d slots in use, %d leases, %d overflows", inUse, slots, leases, overflows);
+        }
+    }
+
+    public SecretBufferPool(int slots) {
+        if (slots < 1) throw new IllegalArgumentException("slots must be >= 1");
+        this.slots = slots;
+        ByteBuffer slab = ByteBuffer.allocateDirect(slots * SLOT_SIZE);
+        this.views = new ByteBuffer[slots];
+        for (int i = 0; i < slots; i++) views[i] = slab.slice(i * SLOT_SIZE, SLOT_SIZE);
+        this.used = new AtomicLongArray((slots + 63) / 64);
+    }
+
+    /** Process-wide pool ({@code -Dbluelocker.secretSlots}, default 256 slots = 16 KiB). */
+    public static SecretBufferPool shared() {
+        SecretBufferPool s = shared;
+        if (s == null) {
+            synchronized (SecretBufferPool.class) {
+                s = shared;
+                if (s == null) shared = s = new SecretBufferPool(DEFAULT_SLOTS);
+            }
+        }
+        return s;
+    }
+
+    /** Zeroed buffer of {@code length} bytes ({@code <= SLOT_SIZE}); close it to wipe and release. */
+    public SecretBuffer acquire(int length) {
+        if (length < 1 || length > SLOT_SIZE) throw new IllegalArgumentException("secret length must be 1.." + SLOT_SIZE);
+        leases.incrementAndGet();
+        int slot = claim();
+        if (slot < 0) {
+            overflows.incrementAndGet();
+            return new SecretBuffer(this, -1, ByteBuffer.allocateDirect(length), length);
+        }
+        inUse.incrementAndGet();
+        return new SecretBuffer(this, slot, views[slot], length);
+    }
+
+    /** Fresh random DEK, generated straight into the slot (no heap copy left behind). */
+    public SecretBuffer newDek() {
+        SecretBuffer dek = acquire(CryptoAesGcm.DEK_LEN);
+        byte[] scratch = SCRATCH.get();
+        CryptoRandom.current().nextBytes(scratch);
+        try {
+            dek.put(scratch, 0, CryptoAesGcm.DEK_LEN);
+        } finally {
+            Arrays.fill(scratch, (byte) 0);
+        }
+        return dek;
+    }
+
+    /** Off-heap copy of {@code secret}; the caller still owns (and wipes) the array. */
+    public SecretBuffer copyOf(byte[] secret) {
+        SecretBuffer buf = acquire(secret.length);
+        buf.put(secret, 0, secret.length);
+        return buf;
+    }
+
+    public Stats stats() {
+        return new Stats(slots, inUse.get(), leases.get(), overflows.get());
+    }
+
+    void release(int slot, ByteBuffer view) {
+        int i = 0;
+        for (; i + Long.BYTES <= view.capacity(); i += Long.BYTES) view.putLong(i, 0L);
+        for (; i < view.capacity(); i++) view.put(i, (byte) 0);
+        if (slot < 0) return;
+
+        int word = slot >>> 6;
+        long bit = 1L << (slot & 63);
+        long cur;
+        do {
+            cur = used.get(word);
+        } while (!used.compareAndSet(word, cur, cur & ~bit));
+        inUse.decrementAndGet();
+    }
+
+    private int claim() {
+        int words = used.length();
+        // Start on a thread-dependent word so concurrent callers rarely race on the same CAS
+        int start = (int) (Thread.currentThread().threadId() % words);
+        for (int k = 0; k < words; k++) {
+            int word = (start + k) % words;
+            long cur;
+            while ((cur = used.get(word)) != -1L) {
+                int bit = Long.numberOfTrailingZeros(~cur);
+                int slot = (word << 6) + bit;
+                if (slot >= slots) break;
+                if (used.compareAndSet(word, cur, cur | (1L << bit))) return slot;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,643 @@
+package cryptographie.maya.crypto;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Segmented ("streaming") AES-GCM. The plaintext is cut into fixed-size segments, each sealed
+ * with its own nonce and tag, so memory use stays bounded by one segment whatever the file size.
+ *
+ * <pre>
+ * layout  = header | seg_0 | seg_1 | ... | seg_n
+ * header  = magic "BLS1" (4) | version (1) | segmentSize (4, BE) | noncePrefix (7) [| codec (1) [| cipher (1) [| keyId (4, BE)]]]
+ * seg_i   = AEAD(dek, nonce_i, header | aad, chunk_i)      -> chunk_i + 16-byte tag
+ * nonce_i = noncePrefix (7) | i (4, BE) | lastFlag (1)
+ * </pre>
+ *
+ * The final segment is sealed with {@code lastFlag = 1}: dropping trailing segments, or
+ * appending some, makes authentication fail instead of silently returning a shorter file.
+ *
+ * Version 1 headers (16 bytes) carry uncompressed data. Version 2 adds a trailing codec byte
+ * (see {@link EnvelopeCompression}) telling how the plaintext was compressed before sealing;
+ * being part of every segment's AAD, it cannot be flipped. This class never interprets it.
+ * Version 3 adds a cipher byte (see {@link ContentCipher}). Version 4, written for every new
+ * envelope, adds a key id: the first 4 bytes of HMAC-SHA256(dek, label), so a wrong DEK (rows
+ * swapped, stale cache) is reported as such before any segment is opened, instead of as a
+ * corrupted segment. It is derived from the DEK alone and survives DEK re-wraps.
+ *
+ * Versions only append fields, each at a fixed offset; {@link Header} exposes the version for
+ * features that need to dispatch on it. Older versions stay readable.
+ */
+public final class StreamingAesGcm {
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+    public static final int MIN_SEGMENT_SIZE = 1024;
+    public static final int MAX_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    public static final int NONCE_PREFIX_LEN = 7;
+    public static final int TAG_LEN = 16;
+    /** Version 1 header length (uncompressed AES-GCM data); each later version appends fields. */
+    public static final int HEADER_LEN = 16;
+    public static final int HEADER_LEN_V2 = HEADER_LEN + 1;
+    public static final int HEADER_LEN_V3 = HEADER_LEN + 2;
+    public static final int HEADER_LEN_V4 = HEADER_LEN + 6;
+    /** Enough bytes to parse any header version; also the length of the headers written now. */
+    public static final int MAX_HEADER_LEN = HEADER_LEN_V4;
+
+    private static final byte[] MAGIC = {'B', 'L', 'S', '1'};
+    private static final byte VERSION_1 = 1;
+    private static final byte VERSION_2 = 2;
+    private static final byte VERSION_3 = 3;
+    private static final byte VERSION_4 = 4;
+
+    private static final String KEY_ID_MAC = "HmacSHA256";
+    private static final byte[] KEY_ID_LABEL = "bluelocker/envelope-key-id/v1".getBytes(StandardCharsets.US_ASCII);
+    private static final ThreadLocal<Mac> KEY_ID_MACS = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance(KEY_ID_MAC);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(KEY_ID_MAC + " not available", e);
+        }
+    });
+
+    private static volatile int segmentSizeForNewItems = DEFAULT_SEGMENT_SIZE;
+
+    private StreamingAesGcm() {}
+
+    /** Segment size for items encrypted from now on: the default until {@link ProviderCalibration} pins one. */
+    public static int segmentSizeForNewItems() {
+        return segmentSizeForNewItems;
+    }
+
+    static void segmentSizeForNewItems(int segmentSize) {
+        checkSegmentSize(segmentSize);
+        segmentSizeForNewItems = segmentSize;
+    }
+
+    /**
+     * Nonce construction for a DEK used for exactly one envelope: {@code random} (default) draws
+     * the prefix, {@code counter} fixes it to zero so every nonce is the plain segment counter.
+     * Both are safe with a fresh DEK; {@code -Dbluelocker.crypto.nonces=counter} skips the RNG.
+     */
+    public static final boolean COUNTER_NONCES = "counter".equalsIgnoreCase(System.getProperty("bluelocker.crypto.nonces"));
+
+    /** Random nonce prefix: safe even if the key encrypts several envelopes. */
+    public static byte[] newNoncePrefix() {
+        return CryptoRandom.bytes(NONCE_PREFIX_LEN);
+    }
+
+    /**
+     * Nonce prefix for a DEK generated for this one envelope (see {@link #COUNTER_NONCES}).
+     * Never use it with a key that already encrypted something.
+     */
+    public static byte[] noncePrefixForFreshKey() {
+        return COUNTER_NONCES ? new byte[NONCE_PREFIX_LEN] : newNoncePrefix();
+    }
+
+    /** Exact ciphertext length (current header included) for {@code plaintextSize} bytes stored uncompressed. */
+    public static long ciphertextSize(long plaintextSize, int segmentSize) {
+        long segments = segmentCount(plaintextSize, segmentSize);
+        return HEADER_LEN_V4 + plaintextSize + segments * TAG_LEN;
+    }
+
+    static long segmentCount(long plaintextSize, int segmentSize) {
+        return Math.max(1, (plaintextSize + segmentSize - 1) / segmentSize);
+    }
+
+    // --- one-shot helpers (small payloads already in memory) ---
+
+    public static byte[] encrypt(byte[] plaintext, byte[] dek, byte[] noncePrefix, byte[] aad, int segmentSize) throws Exception {
+        return encrypt(plaintext, dek, noncePrefix, aad, segmentSize, EnvelopeCompression.CODEC_NONE);
+    }
+
+    /** Same, recording {@code codec} in the header ({@code plaintext} is already compressed with it). */
+    public static byte[] encrypt(byte[] plaintext, byte[] dek, byte[] noncePrefix, byte[] aad, int segmentSize, int codec) throws Exception {
+        return encrypt(plaintext, dek, noncePrefix, aad, segmentSize, codec, ContentCipher.AES_GCM);
+    }
+
+    /** Same, sealing the segments with {@code cipher} (recorded in the header). */
+    public static byte[] encrypt(byte[] plaintext, byte[] dek, byte[] noncePrefix, byte[] aad, int segmentSize, int codec,
+                                 ContentCipher cipher) throws Exception {
+        return sealAll(plaintext, cipher.key(dek), noncePrefix, aad, segmentSize, codec, cipher);
+    }
+
+    /** Same, with a pooled DEK (read in place, no heap copy of the key). */
+    public static byte[] encrypt(byte[] plaintext, SecretBuffer dek, byte[] noncePrefix, byte[] aad, int segmentSize, int codec,
+                                 ContentCipher cipher) throws Exception {
+        return sealAll(plaintext, cipher.key(dek), noncePrefix, aad, segmentSize, codec, cipher);
+    }
+
+    private static byte[] sealAll(byte[] plaintext, SecretKey key, byte[] noncePrefix, byte[] aad, int segmentSize, int codec,
+                                  ContentCipher cipher) throws Exception {
+        Objects.requireNonNull(plaintext);
+        checkSegmentSize(segmentSize);
+        Header header = newHeader(segmentSize, noncePrefix, codec, cipher, key);
+        long total = header.length() + plaintext.length + segmentCount(plaintext.length, segmentSize) * TAG_LEN;
+        if (total > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("plaintext too large for one-shot encryption, use a stream");
+
+        byte[] segAad = segmentAad(header.encoded(), aad);
+        byte[] out = new byte[(int) total];
+        System.arraycopy(header.encoded(), 0, out, 0, header.length());
+
+        Cipher c = cipher.cipher();
+        int segments = (int) segmentCount(plaintext.length, segmentSize);
+        int inPos = 0;
+        int outPos = header.length();
+        for (int i = 0; i < segments; i++) {
+            boolean last = i == segments - 1;
+            int len = last ? plaintext.length - inPos : segmentSize;
+            outPos += seal(c, cipher, key, noncePrefix, i, last, segAad, plaintext, inPos, len, out, outPos);
+            inPos += len;
+        }
+        return out;
+    }
+
+    public static byte[] decrypt(byte[] ciphertext, byte[] dek, byte[] aad) throws Exception {
+        return openAll(ciphertext, cc -> cc.key(dek), aad);
+    }
+
+    public static byte[] decrypt(byte[] ciphertext, SecretBuffer dek, byte[] aad) throws Exception {
+        return openAll(ciphertext, cc -> cc.key(dek), aad);
+    }
+
+    /** {@code keys} gives the key for the cipher named in the header. */
+    private static byte[] openAll(byte[] ciphertext, Function<ContentCipher, SecretKey> keys, byte[] aad) throws Exception {
+        Objects.requireNonNull(ciphertext);
+        Header header = parseHeader(ciphertext);
+        int segmentSize = header.segmentSize();
+        byte[] noncePrefix = header.noncePrefix();
+        byte[] segAad = segmentAad(header.encoded(), aad);
+        SecretKey key = keys.apply(header.cipher());
+        checkKeyId(header, key);
+
+        int body = ciphertext.length - header.length();
+        int fullSeg = segmentSize + TAG_LEN;
+        int segments = Math.max(1, (body + fullSeg - 1) / fullSeg);
+        int lastLen = body - (segments - 1) * fullSeg;
+        if (lastLen < TAG_LEN) throw new GeneralSecurityException("Truncated segmented envelope");
+
+        byte[] out = new byte[body - segments * TAG_LEN];
+        Cipher c = header.cipher().cipher();
+        int inPos = header.length();
+        int outPos = 0;
+        for (int i = 0; i < segments; i++) {
+            boolean last = i == segments - 1;
+            int len = last ? lastLen : fullSeg;
+            outPos += open(c, header.cipher(), key, noncePrefix, i, last, segAad, ciphertext, inPos, len, out, outPos);
+            inPos += len;
+        }
+        return out;
+    }
+
+    // --- random access ---
+
+    /** Positional reads on a stored envelope, e.g. the chunk rows covering the range. */
+    @FunctionalInterface
+    public interface RangeSource {
+        /** Returns up to {@code length} ciphertext bytes starting at {@code offset}. */
+        byte[] read(long offset, int length) throws Exception;
+    }
+
+    /**
+     * Plaintext bytes {@code [offset, offset + length)} of an envelope of {@code ciphertextSize}
+     * bytes; only the segments overlapping the range are fetched and authenticated. The range is
+     * truncated at the end of the plaintext. Compressed envelopes have no random access and are
+     * rejected with an {@link IllegalStateException}.
+     */
+    public static byte[] decryptRange(RangeSource source, long ciphertextSize, byte[] dek, byte[] aad,
+                                      long offset, int length) throws Exception {
+        Header header = parseHeader(source.read(0, (int) Math.min(ciphertextSize, MAX_HEADER_LEN)));
+        return decryptRange(source, ciphertextSize, header, cc -> cc.key(dek), aad, offset, length);
+    }
+
+    static byte[] decryptRange(RangeSource source, long ciphertextSize, Header header, Function<ContentCipher, SecretKey> keys,
+                               byte[] aad, long offset, int length) throws Exception {
+        if (offset < 0 || length < 0) throw new IllegalArgumentException("offset and length must be >= 0");
+        if (header.codec() != EnvelopeCompression.CODEC_NONE) {
+            throw new IllegalStateException("Compressed envelope (codec " + header.codec() + "): no random access");
+        }
+
+        int segmentSize = header.segmentSize();
+        long fullSeg = segmentSize + TAG_LEN;
+        long body = ciphertextSize - header.length();
+        long segments = Math.max(1, (body + fullSeg - 1) / fullSeg);
+        long plaintextSize = body - segments * TAG_LEN;
+        if (body - (segments - 1) * fullSeg < TAG_LEN) throw new GeneralSecurityException("Truncated segmented envelope");
+        if (offset >= plaintextSize || length == 0) return new byte[0];
+        SecretKey key = keys.apply(header.cipher());
+        checkKeyId(header, key);
+
+        long end = Math.min(plaintextSize, offset + length);
+        long first = offset / segmentSize;
+        long last = (end - 1) / segmentSize;
+        long ctStart = header.length() + first * fullSeg;
+        long ctEnd = Math.min(ciphertextSize, header.length() + (last + 1) * fullSeg);
+        byte[] ct = source.read(ctStart, Math.toIntExact(ctEnd - ctStart));
+        if (ct.length != ctEnd - ctStart) throw new GeneralSecurityException("Short read on segmented envelope");
+
+        byte[] segAad = segmentAad(header.encoded(), aad);
+        byte[] noncePrefix = header.noncePrefix();
+        Cipher c = header.cipher().cipher();
+        byte[] pt = new byte[(int) (ct.length - (last - first + 1) * TAG_LEN)];
+        int inPos = 0;
+        int outPos = 0;
+        for (long i = first; i <= last; i++) {
+            int len = (int) Math.min(fullSeg, ct.length - inPos);
+            outPos += open(c, header.cipher(), key, noncePrefix, i, i == segments - 1, segAad, ct, inPos, len, pt, outPos);
+            inPos += len;
+        }
+
+        int from = (int) (offset - first * segmentSize);
+        try {
+            return Arrays.copyOfRange(pt, from, from + (int) (end - offset));
+        } finally {
+            Arrays.fill(pt, (byte) 0);
+        }
+    }
+
+    // --- stream / channel API ---
+
+    public static OutputStream newEncryptingStream(OutputStream out, byte[] dek, byte[] noncePrefix, byte[] aad, int segmentSize) throws Exception {
+        return newEncryptingStream(out, dek, noncePrefix, aad, segmentSize, EnvelopeCompression.CODEC_NONE);
+    }
+
+    /** Same, recording {@code codec} in the header (the caller writes data compressed with it). */
+    public static OutputStream newEncryptingStream(OutputStream out, byte[] dek, byte[] noncePrefix, byte[] aad, int segmentSize, int codec) throws Exception {
+        return newEncryptingStream(out, dek, noncePrefix, aad, segmentSize, codec, ContentCipher.AES_GCM);
+    }
+
+    /** Same, sealing the segments with {@code cipher} (recorded in the header). */
+    public static OutputStream newEncryptingStream(OutputStream out, byte[] dek, byte[] noncePrefix, byte[] aad, int segmentSize, int codec,
+                                                   ContentCipher cipher) throws Exception {
+        SecretKey key = cipher.key(dek);
+        return new EncryptingOutputStream(out, key, newHeader(segmentSize, noncePrefix, codec, cipher, key), aad);
+    }
+
+    /** Same, with a pooled DEK; the stream keeps its own key copy, so the lease may end before it. */
+    public static OutputStream newEncryptingStream(OutputStream out, SecretBuffer dek, byte[] noncePrefix, byte[] aad, int segmentSize, int codec,
+                                                   ContentCipher cipher) throws Exception {
+        SecretKey key = cipher.detachedKey(dek);
+        return new EncryptingOutputStream(out, key, newHeader(segmentSize, noncePrefix, codec, cipher, key), aad);
+    }
+
+    /** Decrypts segment by segment; the data comes out as stored (see {@link #codecOf(InputStream)}). */
+    public static InputStream newDecryptingStream(InputStream in, byte[] dek, byte[] aad) throws Exception {
+        return new DecryptingInputStream(in, cc -> cc.key(dek), aad);
+    }
+
+    /** Same, with a pooled DEK; the stream keeps its own key copy, so the lease may end before it. */
+    public static InputStream newDecryptingStream(InputStream in, SecretBuffer dek, byte[] aad) throws Exception {
+        return new DecryptingInputStream(in, cc -> cc.detachedKey(dek), aad);
+    }
+
+    public static WritableByteChannel newEncryptingChannel(WritableByteChannel ch, byte[] dek, byte[] noncePrefix, byte[] aad, int segmentSize) throws Exception {
+        return Channels.newChannel(newEncryptingStream(Channels.newOutputStream(ch), dek, noncePrefix, aad, segmentSize));
+    }
+
+    public static ReadableByteChannel newDecryptingChannel(ReadableByteChannel ch, byte[] dek, byte[] aad) throws Exception {
+        return Channels.newChannel(newDecryptingStream(Channels.newInputStream(ch), dek, aad));
+    }
+
+    // --- header / nonce ---
+
+    /**
+     * Parsed envelope header; {@code encoded} is the exact byte string the segments authenticate.
+     * Fields absent from older versions hold their implied value (no codec, AES-GCM, key id 0).
+     */
+    record Header(byte[] encoded, int version, int segmentSize, byte[] noncePrefix, int codec, ContentCipher cipher, int keyId) {
+        int length() {
+            return encoded.length;
+        }
+
+        boolean hasKeyId() {
+            return version >= VERSION_4;
+        }
+    }
+
+    /** Current (version 4) header for an envelope sealed with {@code key}. */
+    static Header newHeader(int segmentSize, byte[] noncePrefix, int codec, ContentCipher cipher, SecretKey key)
+            throws GeneralSecurityException {
+        checkSegmentSize(segmentSize);
+        if (noncePrefix == null || noncePrefix.length != NONCE_PREFIX_LEN) {
+            throw new IllegalArgumentException("noncePrefix must be " + NONCE_PREFIX_LEN + " bytes");
+        }
+        if (codec < 0 || codec > 0xFF) throw new IllegalArgumentException("codec out of range: " + codec);
+        Objects.requireNonNull(cipher);
+        int keyId = keyIdOf(key);
+
+        byte[] h = new byte[HEADER_LEN_V4];
+        ByteBuffer b = ByteBuffer.wrap(h);
+        b.put(MAGIC).put(VERSION_4).putInt(segmentSize).put(noncePrefix)
+                .put((byte) codec).put((byte) cipher.id()).putInt(keyId);
+        return new Header(h, VERSION_4, segmentSize, noncePrefix.clone(), codec, cipher, keyId);
+    }
+
+    /** Key id recorded in version 4 headers: first 4 bytes of HMAC-SHA256(key, label). */
+    static int keyIdOf(SecretKey key) throws GeneralSecurityException {
+        Mac mac = KEY_ID_MACS.get();
+        mac.init(key);
+        return ByteBuffer.wrap(mac.doFinal(KEY_ID_LABEL)).getInt();
+    }
+
+    static void checkKeyId(Header header, SecretKey key) throws GeneralSecurityException {
+        if (header.hasKeyId() && keyIdOf(key) != header.keyId()) {
+            throw new GeneralSecurityException("Envelope key id mismatch: the DEK does not belong to this item");
+        }
+    }
+
+    /** Parses the header at the start of {@code data} (the rest of the array is ignored). */
+    static Header parseHeader(byte[] data) throws GeneralSecurityException {
+        if (data.length < MAGIC.length + 1) throw new GeneralSecurityException("Ciphertext too short for a segmented envelope");
+        int len = headerLength(data);
+        if (data.length < len) throw new GeneralSecurityException("Ciphertext too short for a segmented envelope");
+        byte[] h = Arrays.copyOf(data, len);
+        int segmentSize = ByteBuffer.wrap(h, 5, 4).getInt();
+        if (segmentSize < MIN_SEGMENT_SIZE || segmentSize > MAX_SEGMENT_SIZE) {
+            throw new GeneralSecurityException("Invalid segment size: " + segmentSize);
+        }
+        int codec = len >= HEADER_LEN_V2 ? h[HEADER_LEN] & 0xFF : EnvelopeCompression.CODEC_NONE;
+        ContentCipher cipher = len >= HEADER_LEN_V3 ? ContentCipher.byId(h[HEADER_LEN_V2] & 0xFF) : ContentCipher.AES_GCM;
+        int keyId = len >= HEADER_LEN_V4 ? ByteBuffer.wrap(h, HEADER_LEN_V3, 4).getInt() : 0;
+        return new Header(h, h[4], segmentSize, Arrays.copyOfRange(h, 9, HEADER_LEN), codec, cipher, keyId);
+    }
+
+    /** Reads exactly one header from {@code in}. */
+    static Header readHeader(InputStream in) throws IOException, GeneralSecurityException {
+        byte[] start = in.readNBytes(MAGIC.length + 1);
+        if (start.length < MAGIC.length + 1) throw new EOFException("Truncated envelope header");
+        int len = headerLength(start);
+        byte[] h = Arrays.copyOf(start, len);
+        if (in.readNBytes(h, start.length, len - start.length) < len - start.length) throw new EOFException("Truncated envelope header");
+        return parseHeader(h);
+    }
+
+    /**
+     * Structural check of a stored envelope from its first bytes ({@code head}, at least the
+     * header) and total size: magic, version, segment size and a segment layout that ends on a
+     * complete tag. Nothing is decrypted, so a passing envelope may still fail authentication.
+     * Returns the nonce prefix recorded in the header.
+     */
+    public static byte[] checkLayout(byte[] head, long ciphertextSize) throws GeneralSecurityException {
+        Header header = parseHeader(head);
+        long fullSeg = header.segmentSize() + TAG_LEN;
+        long body = ciphertextSize - header.length();
+        long segments = Math.max(1, (body + fullSeg - 1) / fullSeg);
+        if (body - (segments - 1) * fullSeg < TAG_LEN) throw new GeneralSecurityException("Truncated segmented envelope");
+        if (segments > 0x1_0000_0000L) throw new GeneralSecurityException("Too many segments: " + segments);
+        return header.noncePrefix();
+    }
+
+    /** Codec recorded in the header at the start of {@code ciphertext}. */
+    public static int codecOf(byte[] ciphertext) throws GeneralSecurityException {
+        return parseHeader(ciphertext).codec();
+    }
+
+    /** Codec recorded in the header at the current position of {@code in}, which is left unread (needs mark/reset). */
+    public static int codecOf(InputStream in) throws IOException, GeneralSecurityException {
+        if (!in.markSupported()) throw new IllegalArgumentException("stream must support mark/reset");
+        in.mark(MAX_HEADER_LEN);
+        try {
+            return readHeader(in).codec();
+        } finally {
+            in.reset();
+        }
+    }
+
+    private static int headerLength(byte[] start) throws GeneralSecurityException {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (start[i] != MAGIC[i]) throw new GeneralSecurityException("Not a segmented envelope (bad magic)");
+        }
+        return switch (start[4]) {
+            case VERSION_1 -> HEADER_LEN;
+            case VERSION_2 -> HEADER_LEN_V2;
+            case VERSION_3 -> HEADER_LEN_V3;
+            case VERSION_4 -> HEADER_LEN_V4;
+            default -> throw new GeneralSecurityException("Unsupported envelope version: " + start[4]);
+        };
+    }
+
+    private static void checkSegmentSize(int segmentSize) {
+        if (segmentSize < MIN_SEGMENT_SIZE || segmentSize > MAX_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("segmentSize out of range: " + segmentSize);
+        }
+    }
+
+    static byte[] segmentAad(byte[] header, byte[] aad) {
+        if (aad == null || aad.length == 0) return header;
+        byte[] out = Arrays.copyOf(header, header.length + aad.length);
+        System.arraycopy(aad, 0, out, header.length, aad.length);
+        return out;
+    }
+
+    static byte[] segmentNonce(byte[] noncePrefix, long index, boolean last) {
+        if (index < 0 || index > 0xFFFF_FFFFL) throw new IllegalStateException("Too many segments");
+        byte[] nonce = new byte[CryptoAesGcm.IV_LEN];
+        System.arraycopy(noncePrefix, 0, nonce, 0, NONCE_PREFIX_LEN);
+        nonce[7] = (byte) (index >>> 24);
+        nonce[8] = (byte) (index >>> 16);
+        nonce[9] = (byte) (index >>> 8);
+        nonce[10] = (byte) index;
+        nonce[11] = (byte) (last ? 1 : 0);
+        return nonce;
+    }
+
+    static int seal(Cipher c, ContentCipher cc, SecretKey key, byte[] noncePrefix, long index, boolean last, byte[] segAad,
+                    byte[] in, int inOff, int len, byte[] out, int outOff) throws GeneralSecurityException {
+        cc.init(c, Cipher.ENCRYPT_MODE, key, segmentNonce(noncePrefix, index, last));
+        c.updateAAD(segAad);
+        return c.doFinal(in, inOff, len, out, outOff);
+    }
+
+    static int open(Cipher c, ContentCipher cc, SecretKey key, byte[] noncePrefix, long index, boolean last, byte[] segAad,
+                    byte[] in, int inOff, int len, byte[] out, int outOff) throws GeneralSecurityException {
+        cc.init(c, Cipher.DECRYPT_MODE, key, segmentNonce(noncePrefix, index, last));
+        c.updateAAD(segAad);
+        return c.doFinal(in, inOff, len, out, outOff);
+    }
+
+    // --- streams ---
+
+    private static final class EncryptingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final ContentCipher contentCipher;
+        private final Cipher cipher;
+        private final SecretKey key;
+        private final byte[] noncePrefix;
+        private final byte[] segAad;
+        private final byte[] buf;
+        private final byte[] ctBuf;
+        private int pos;
+        private long index;
+        private boolean closed;
+
+        EncryptingOutputStream(OutputStream out, SecretKey key, Header header, byte[] aad) throws Exception {
+            this.out = Objects.requireNonNull(out);
+            // Streams may be handed across threads, so they own their Cipher
+            this.contentCipher = header.cipher();
+            this.cipher = contentCipher.newCipher();
+            this.key = key;
+            this.noncePrefix = header.noncePrefix();
+            this.segAad = segmentAad(header.encoded(), aad);
+            this.buf = new byte[header.segmentSize()];
+            this.ctBuf = new byte[header.segmentSize() + TAG_LEN];
+            out.write(header.encoded());
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (closed) throw new IOException("Stream closed");
+            while (len > 0) {
+                // A full buffer is only sealed once more data arrives, so the last segment is never empty
+                if (pos == buf.length) sealSegment(false);
+                int n = Math.min(len, buf.length - pos);
+                System.arraycopy(b, off, buf, pos, n);
+                pos += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void sealSegment(boolean last) throws IOException {
+            try {
+                int n = seal(cipher, contentCipher, key, noncePrefix, index, last, segAad, buf, 0, pos, ctBuf, 0);
+                out.write(ctBuf, 0, n);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Segment encryption failed", e);
+            }
+            index++;
+            pos = 0;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                sealSegment(true);
+            } finally {
+                Arrays.fill(buf, (byte) 0);
+                out.close();
+            }
+        }
+    }
+
+    private static final class DecryptingInputStream extends InputStream {
+        private final InputStream in;
+        private final ContentCipher contentCipher;
+        private final Cipher cipher;
+        private final SecretKey key;
+        private final byte[] noncePrefix;
+        private final byte[] segAad;
+        private final byte[] ctBuf;
+        private final byte[] ptBuf;
+        private int ptPos;
+        private int ptLen;
+        private long index;
+        private int lookahead = -1;
+        private boolean lastSeen;
+        private boolean closed;
+
+        DecryptingInputStream(InputStream in, Function<ContentCipher, SecretKey> keys, byte[] aad) throws Exception {
+            this.in = Objects.requireNonNull(in);
+            Header header = readHeader(in);
+            int segmentSize = header.segmentSize();
+            this.noncePrefix = header.noncePrefix();
+            this.segAad = segmentAad(header.encoded(), aad);
+            // Streams may be handed across threads, so they own their Cipher
+            this.contentCipher = header.cipher();
+            this.cipher = contentCipher.newCipher();
+            this.key = keys.apply(contentCipher);
+            checkKeyId(header, key);
+            this.ctBuf = new byte[segmentSize + TAG_LEN];
+            this.ptBuf = new byte[segmentSize];
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) return -1;
+            return ptBuf[ptPos++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (len == 0) return 0;
+            if (!fill()) return -1;
+            int n = Math.min(len, ptLen - ptPos);
+            System.arraycopy(ptBuf, ptPos, b, off, n);
+            ptPos += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return ptLen - ptPos;
+        }
+
+        private boolean fill() throws IOException {
+            if (closed) throw new IOException("Stream closed");
+            if (ptPos < ptLen) return true;
+            if (lastSeen) return false;
+
+            int n = 0;
+            if (lookahead >= 0) {
+                ctBuf[n++] = (byte) lookahead;
+                lookahead = -1;
+            }
+            n += in.readNBytes(ctBuf, n, ctBuf.length - n);
+            if (n < TAG_LEN) throw new EOFException("Truncated segmented envelope");
+
+            // A short segment is the last one; a full one is last only if nothing follows it
+            boolean last = n < ctBuf.length;
+            if (!last) {
+                lookahead = in.read();
+                last = lookahead < 0;
+            }
+
+            try {
+                ptLen = open(cipher, contentCipher, key, noncePrefix, index, last, segAad, ctBuf, 0, n, ptBuf, 0);
+            } catch (AEADBadTagException e) {
+                throw new IOException("Segment " + index + " failed authentication", e);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Segment decryption failed", e);
+            }
+            ptPos = 0;
+            index++;
+            lastSeen = last;
+            return ptLen > 0 || fill();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            Arrays.fill(ptBuf, (byte) 0);
+            in.close();
+        }
+    }
+}
@@ -32,10 +32,12 @@ public class DatabaseManager {
             String db = props.getProperty("db.name", "bluelocker_db");
             String user = props.getProperty("db.user", "root");
             String pass = props.getProperty("db.password", "");
-            String url = String.format("jdbc:mysql://%s:%s/%s?useSSL=%s&serverTimezone=%s&allowPublicKeyRetrieval=true",
+            // rewriteBatchedStatements : un executeBatch() part en un seul aller-retour (mises à jour en lot)
+            String url = String.format("jdbc:mysql://%s:%s/%s?useSSL=%s&serverTimezone=%s&allowPublicKeyRetrieval=true&rewriteBatchedStatements=%s",
                     host, port, db,
                     props.getProperty("db.useSSL", "false"),
-                    props.getProperty("db.serverTimezone", "UTC"));
+                    props.getProperty("db.serverTimezone", "UTC"),
+                    props.getProperty("db.rewriteBatchedStatements", "true"));
 
             cfg.setJdbcUrl(url);
             cfg.setUsername(user);
@@ -2,15 +2,68 @@ package cryptographie.maya.dao;
 
 import cryptographie.maya.model.SecureItem;
 
+import java.io.InputStream;
 import java.util.List;
 import java.util.Optional;
 
 public interface SecureItemDAO {
+
+    /** Juste ce qu'il faut pour ré-envelopper une DEK (jamais le ciphertext). */
+    record WrappedDek(int id, byte[] encryptedDek, String dekAlg) {}
+
+    /** Nouvelle enveloppe d'un item ; {@code previousDek} sert de compare-and-set. */
+    record RewrappedDek(int id, byte[] previousDek, byte[] encryptedDek, String dekAlg) {}
+
     int create(SecureItem item) throws Exception;
 
+    /**
+     * Comme {@link #create(SecureItem)}, le ciphertext étant lu dans {@code encryptedData} au fil de
+     * l'envoi (getEncryptedData() est ignoré) et écrit morceau par morceau : il n'est jamais entier en mémoire.
+     */
+    int create(SecureItem item, InputStream encryptedData) throws Exception;
+
     List<SecureItem> listByUserId(int userId) throws Exception;
 
     Optional<SecureItem> findByIdForUser(int itemId, int userId) throws Exception;
 
+    /** Comme {@link #findByIdForUser} mais sans le ciphertext ; encryptedSize donne sa taille. */
+    Optional<SecureItem> findKeysForUser(int itemId, int userId) throws Exception;
+
+    /**
+     * Page d'items tous utilisateurs confondus, par ordre d'id croissant après {@code afterId}
+     * (pagination par clé), sans le ciphertext ; encryptedSize donne sa taille.
+     */
+    List<SecureItem> listKeysAfter(int afterId, int limit) throws Exception;
+
+    /** Lit {@code length} octets du ciphertext à partir de {@code offset} (0-based), sans charger le reste. */
+    byte[] readEncryptedRange(int itemId, int userId, long offset, int length) throws Exception;
+
+    /**
+     * Octets que {@link #readEncryptedRange} fait lire au serveur pour cette plage, pour les budgets
+     * d'E/S : les morceaux stockés qui recouvrent la plage, en entier.
+     */
+    long serverBytesForRange(long encryptedSize, long offset, int length);
+
+    /**
+     * Le ciphertext en flux, morceau par morceau ; {@code encryptedSize} vient de
+     * {@link #findKeysForUser}. Le flux garde une connexion jusqu'à sa fermeture.
+     */
+    InputStream openEncryptedData(int itemId, int userId, long encryptedSize) throws Exception;
+
     boolean deleteForUser(int itemId, int userId) throws Exception;
+
+    /**
+     * Remplace la DEK enveloppée d'un item sans toucher au ciphertext.
+     * Conditionnel : n'écrit que si dek_alg vaut encore {@code expectedDekAlg}.
+     */
+    boolean updateWrappedDek(int itemId, int userId, String expectedDekAlg, byte[] encryptedDek, String dekAlg) throws Exception;
+
+    /** Page de DEK d'un utilisateur par ordre d'id croissant, à partir de l'id {@code afterId} exclu (pagination par clé). */
+    List<WrappedDek> listWrappedDeks(int userId, int afterId, int limit) throws Exception;
+
+    /**
+     * Mise à jour en lot, dans une transaction. Chaque ligne n'est écrite que si encrypted_dek vaut
+     * encore {@code previousDek} ; retourne le nombre de lignes effectivement modifiées.
+     */
+    int updateWrappedDeks(int userId, List<RewrappedDek> updates) throws Exception;
 }
\ No newline at end of file
@@ -2,7 +2,9 @@ package cryptographie.maya.dao;
 
 import cryptographie.maya.model.User;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface UserDAO {
@@ -14,6 +16,30 @@ public interface UserDAO {
 
     String getPublicKeyById(int userId) throws Exception;
 
+    /** Clés publiques (Base64) de plusieurs utilisateurs en une requête ; les ids inconnus sont absents de la map. */
+    Map<Integer, String> getPublicKeysByIds(Collection<Integer> userIds) throws Exception;
+
+    // Clé maître utilisateur (UMK), enveloppée RSA-OAEP ; null si pas encore créée
+    byte[] getWrappedMasterKey(int userId) throws Exception;
+
+    /** N'écrit que si aucune UMK n'existe encore ; false si une autre session l'a créée entre-temps. */
+    boolean setWrappedMasterKeyIfAbsent(int userId, byte[] wrappedMasterKey) throws Exception;
+
+    /**
+     * Rotation de la paire de clés : remplace clé publique et UMK enveloppée en une seule écriture,
+     * seulement si wrapped_umk vaut encore {@code expectedWrappedMasterKey}.
+     */
+    boolean replaceUserKeys(int userId, byte[] expectedWrappedMasterKey, String publicKeyB64, byte[] wrappedMasterKey) throws Exception;
+
+    /**
+     * Remplace le hash du mot de passe seulement s'il vaut encore {@code expectedOldHash}
+     * (migration BCrypt -> Argon2) ; false si le mot de passe a changé entre-temps.
+     */
+    boolean updatePasswordHash(int userId, String expectedOldHash, String newHash) throws Exception;
+
+    /** Nombre de comptes dont le hash est encore au format BCrypt ({@code $2...}). */
+    long countLegacyPasswordHashes() throws Exception;
+
     // Nouveaux : méthodes admin / listing
     List<User> listAll() throws Exception;
 
@@ -4,6 +4,10 @@ import cryptographie.maya.dao.DatabaseManager;
 import cryptographie.maya.dao.SecureItemDAO;
 import cryptographie.maya.model.SecureItem;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -12,35 +16,78 @@ import java.util.Optional;
 
 public class SecureItemDAOImpl implements SecureItemDAO {
 
+    /**
+     * Taille des lignes de secure_item_chunks (le dernier morceau d'un item est plus court). Alignée
+     * sur les lectures séquentielles de FileCryptoEnvelope : une lecture de plage ne fait lire au
+     * serveur que les morceaux qu'elle recouvre.
+     */
+    static final int CHUNK_SIZE = 1024 * 1024;
+
     @Override
     public int create(SecureItem item) throws Exception {
-        String sql = """
-            INSERT INTO secure_items
-            (user_id, title, item_type, file_size, encrypted_data, iv, encrypted_dek, dek_alg, created_at)
-            VALUES (?, ?, ?, ?, ?, ?, ?, ?, NOW())
-            """;
-
-        try (Connection con = DatabaseManager.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        return create(item, new ByteArrayInputStream(item.getEncryptedData()));
+    }
 
-            ps.setInt(1, item.getUserId());
-            ps.setString(2, item.getTitle());
-            ps.setString(3, item.getItemType());
-            ps.setLong(4, item.getFileSize());
-            ps.setBytes(5, item.getEncryptedData());
-            ps.setBytes(6, item.getIv()); // 12 bytes
-            ps.setBytes(7, item.getEncryptedDek());
-            ps.setString(8, item.getDekAlg()); // "RSA-OAEP"
+    @Override
+    public int create(SecureItem item, InputStream encryptedData) throws Exception {
+        try (Connection con = DatabaseManager.getConnection()) {
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
+                 PreparedStatement chunk = con.prepareStatement("INSERT INTO secure_item_chunks (item_id, seq, data) VALUES (?, ?, ?)");
+                 PreparedStatement size = con.prepareStatement("UPDATE secure_items SET encrypted_size = ? WHERE id = ?")) {
+                int id = insert(ps, item);
 
-            ps.executeUpdate();
+                // Un morceau en mémoire à la fois ; la taille n'est connue qu'à la fin du flux (compression)
+                long total = 0;
+                int seq = 0;
+                for (byte[] data = encryptedData.readNBytes(CHUNK_SIZE); data.length > 0; data = encryptedData.readNBytes(CHUNK_SIZE)) {
+                    chunk.setInt(1, id);
+                    chunk.setInt(2, seq++);
+                    chunk.setBytes(3, data);
+                    chunk.executeUpdate();
+                    total += data.length;
+                    if (data.length < CHUNK_SIZE) break;
+                }
 
-            try (ResultSet rs = ps.getGeneratedKeys()) {
-                if (rs.next()) return rs.getInt(1);
+                size.setLong(1, total);
+                size.setInt(2, id);
+                size.executeUpdate();
+                con.commit();
+                return id;
+            } catch (Exception e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(autoCommit);
             }
-            throw new SQLException("SecureItem insertion failed: no generated key returned.");
         }
     }
 
+    private static final String INSERT_SQL = """
+        INSERT INTO secure_items
+        (user_id, title, item_type, file_size, iv, encrypted_dek, dek_alg, encrypted_size, created_at)
+        VALUES (?, ?, ?, ?, ?, ?, ?, 0, NOW())
+        """;
+
+    /** Ligne de l'item ; le ciphertext et sa taille sont écrits ensuite dans la même transaction. */
+    private static int insert(PreparedStatement ps, SecureItem item) throws SQLException {
+        ps.setInt(1, item.getUserId());
+        ps.setString(2, item.getTitle());
+        ps.setString(3, item.getItemType());
+        ps.setLong(4, item.getFileSize());
+        ps.setBytes(5, item.getIv()); // 12 bytes
+        ps.setBytes(6, item.getEncryptedDek());
+        ps.setString(7, item.getDekAlg()); // "RSA-OAEP"
+
+        ps.executeUpdate();
+
+        try (ResultSet rs = ps.getGeneratedKeys()) {
+            if (rs.next()) return rs.getInt(1);
+        }
+        throw new SQLException("SecureItem insertion failed: no generated key returned.");
+    }
+
     @Override
     public List<SecureItem> listByUserId(int userId) throws Exception {
         String sql = """
@@ -82,8 +129,8 @@ public class SecureItemDAOImpl implements SecureItemDAO {
     @Override
     public Optional<SecureItem> findByIdForUser(int itemId, int userId) throws Exception {
         String sql = """
-            SELECT id, user_id, title, item_type, file_size,
-                   encrypted_data, iv, encrypted_dek, dek_alg, created_at
+            SELECT id, user_id, title, item_type, file_size, encrypted_size,
+                   iv, encrypted_dek, dek_alg, created_at
             FROM secure_items
             WHERE id = ? AND user_id = ?
             """;
@@ -104,7 +151,8 @@ public class SecureItemDAOImpl implements SecureItemDAO {
                 i.setItemType(rs.getString("item_type"));
                 i.setFileSize(rs.getLong("file_size"));
 
-                i.setEncryptedData(rs.getBytes("encrypted_data"));
+                i.setEncryptedSize(rs.getLong("encrypted_size"));
+                i.setEncryptedData(readAllChunks(con, itemId, i.getEncryptedSize()));
                 i.setIv(rs.getBytes("iv"));
                 i.setEncryptedDek(rs.getBytes("encrypted_dek"));
                 i.setDekAlg(rs.getString("dek_alg"));
@@ -119,6 +167,271 @@ public class SecureItemDAOImpl implements SecureItemDAO {
         }
     }
 
+    /** Concatène les morceaux d'un item (enveloppes historiques en un seul bloc GCM, déchiffrables seulement entières). */
+    private static byte[] readAllChunks(Connection con, int itemId, long encryptedSize) throws SQLException {
+        if (encryptedSize > Integer.MAX_VALUE - 8) throw new SQLException("Item too large to load whole (id=" + itemId + ")");
+        String sql = "SELECT data FROM secure_item_chunks WHERE item_id = ? ORDER BY seq";
+
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setInt(1, itemId);
+            try (ResultSet rs = ps.executeQuery()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream((int) encryptedSize);
+                while (rs.next()) out.writeBytes(rs.getBytes(1));
+                return out.toByteArray();
+            }
+        }
+    }
+
+    @Override
+    public Optional<SecureItem> findKeysForUser(int itemId, int userId) throws Exception {
+        String sql = """
+            SELECT id, user_id, title, item_type, file_size, encrypted_size,
+                   iv, encrypted_dek, dek_alg, created_at
+            FROM secure_items
+            WHERE id = ? AND user_id = ?
+            """;
+
+        try (Connection con = DatabaseManager.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+
+            ps.setInt(1, itemId);
+            ps.setInt(2, userId);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return Optional.empty();
+
+                SecureItem i = new SecureItem();
+                i.setId(rs.getInt("id"));
+                i.setUserId(rs.getInt("user_id"));
+                i.setTitle(rs.getString("title"));
+                i.setItemType(rs.getString("item_type"));
+                i.setFileSize(rs.getLong("file_size"));
+                i.setEncryptedSize(rs.getLong("encrypted_size"));
+
+                i.setIv(rs.getBytes("iv"));
+                i.setEncryptedDek(rs.getBytes("encrypted_dek"));
+                i.setDekAlg(rs.getString("dek_alg"));
+
+                Timestamp ts = rs.getTimestamp("created_at");
+                if (ts != null) {
+                    i.setCreatedAt(ts.toLocalDateTime());
+                }
+
+                return Optional.of(i);
+            }
+        }
+    }
+
+    @Override
+    public List<SecureItem> listKeysAfter(int afterId, int limit) throws Exception {
+        String sql = """
+            SELECT id, user_id, title, item_type, file_size, encrypted_size,
+                   iv, encrypted_dek, dek_alg, created_at
+            FROM secure_items
+            WHERE id > ?
+            ORDER BY id
+            LIMIT ?
+            """;
+
+        List<SecureItem> out = new ArrayList<>();
+        try (Connection con = DatabaseManager.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+
+            ps.setInt(1, afterId);
+            ps.setInt(2, limit);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    SecureItem i = new SecureItem();
+                    i.setId(rs.getInt("id"));
+                    i.setUserId(rs.getInt("user_id"));
+                    i.setTitle(rs.getString("title"));
+                    i.setItemType(rs.getString("item_type"));
+                    i.setFileSize(rs.getLong("file_size"));
+                    i.setEncryptedSize(rs.getLong("encrypted_size"));
+
+                    i.setIv(rs.getBytes("iv"));
+                    i.setEncryptedDek(rs.getBytes("encrypted_dek"));
+                    i.setDekAlg(rs.getString("dek_alg"));
+
+                    Timestamp ts = rs.getTimestamp("created_at");
+                    if (ts != null) {
+                        i.setCreatedAt(ts.toLocalDateTime());
+                    }
+                    out.add(i);
+                }
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public byte[] readEncryptedRange(int itemId, int userId, long offset, int length) throws Exception {
+        // Seuls les morceaux recouvrant la plage sont lus, et seule leur partie utile transite (SUBSTRING est 1-based)
+        String sql = """
+            SELECT SUBSTRING(c.data, GREATEST(? - c.seq * %1$d, 0) + 1, LEAST(? - c.seq * %1$d, %1$d) - GREATEST(? - c.seq * %1$d, 0))
+            FROM secure_item_chunks c
+            JOIN secure_items i ON i.id = c.item_id
+            WHERE c.item_id = ? AND i.user_id = ? AND c.seq BETWEEN ? AND ?
+            ORDER BY c.seq
+            """.formatted(CHUNK_SIZE);
+
+        long end = offset + length;
+        try (Connection con = DatabaseManager.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+
+            ps.setLong(1, offset);
+            ps.setLong(2, end);
+            ps.setLong(3, offset);
+            ps.setInt(4, itemId);
+            ps.setInt(5, userId);
+            ps.setLong(6, offset / CHUNK_SIZE);
+            ps.setLong(7, length == 0 ? -1 : (end - 1) / CHUNK_SIZE);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+            boolean any = false;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    out.writeBytes(rs.getBytes(1));
+                    any = true;
+                }
+            }
+            // Aucune ligne : plage au-delà de la fin, ou item absent / d'un autre utilisateur
+            if (!any && !exists(con, itemId, userId)) {
+                throw new IllegalArgumentException("Item not found or not owned by user (id=" + itemId + ")");
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static boolean exists(Connection con, int itemId, int userId) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("SELECT 1 FROM secure_items WHERE id = ? AND user_id = ?")) {
+            ps.setInt(1, itemId);
+            ps.setInt(2, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    @Override
+    public long serverBytesForRange(long encryptedSize, long offset, int length) {
+        // Chaque morceau recouvert est lu en entier par le serveur, le reste jamais
+        if (length <= 0 || offset >= encryptedSize) return 0;
+        long first = offset / CHUNK_SIZE * CHUNK_SIZE;
+        long end = Math.min(encryptedSize, (offset + length + CHUNK_SIZE - 1) / CHUNK_SIZE * CHUNK_SIZE);
+        return end - first;
+    }
+
+    @Override
+    public InputStream openEncryptedData(int itemId, int userId, long encryptedSize) throws Exception {
+        // Curseur par clé sur (item_id, seq) : chaque page ne relit que ses propres morceaux
+        String sql = """
+            SELECT c.seq, c.data
+            FROM secure_item_chunks c
+            JOIN secure_items i ON i.id = c.item_id
+            WHERE c.item_id = ? AND i.user_id = ? AND c.seq > ?
+            ORDER BY c.seq
+            LIMIT ?
+            """;
+
+        Connection con = DatabaseManager.getConnection();
+        try {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // Résultats en flux (Connector/J) : une seule ligne, donc un seul morceau, en mémoire à la fois
+            ps.setFetchSize(Integer.MIN_VALUE);
+            ps.setInt(1, itemId);
+            ps.setInt(2, userId);
+            ps.setInt(4, EncryptedDataStream.PAGE);
+            return new EncryptedDataStream(con, ps, itemId, encryptedSize);
+        } catch (SQLException e) {
+            con.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Morceaux de secure_item_chunks lus dans l'ordre, par pages de {@link #PAGE} sur une seule
+     * connexion ; le tas ne porte qu'un morceau à la fois. Fermer le flux rend la connexion au pool.
+     */
+    private static final class EncryptedDataStream extends InputStream {
+        static final int PAGE = 16;
+
+        private final Connection con;
+        private final PreparedStatement ps;
+        private final int itemId;
+        private final long size;
+        private long fetched;
+        private int lastSeq = -1;
+        private int pageRows;
+        private ResultSet rs;
+        private InputStream chunk = InputStream.nullInputStream();
+
+        EncryptedDataStream(Connection con, PreparedStatement ps, int itemId, long size) {
+            this.con = con;
+            this.ps = ps;
+            this.itemId = itemId;
+            this.size = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            int n;
+            while ((n = chunk.read(b, off, len)) < 0) {
+                if (fetched >= size || !nextChunk()) return -1;
+            }
+            return n;
+        }
+
+        private boolean nextChunk() throws IOException {
+            try {
+                if (rs == null || !rs.next()) {
+                    boolean pageWasFull = rs == null || pageRows == PAGE;
+                    if (rs != null) rs.close();
+                    rs = null;
+                    if (!pageWasFull) return false;
+                    ps.setInt(3, lastSeq);
+                    rs = ps.executeQuery();
+                    pageRows = 0;
+                    if (!rs.next()) {
+                        if (lastSeq < 0) throw new IOException("Item not found or not owned by user (id=" + itemId + ")");
+                        return false;
+                    }
+                }
+                pageRows++;
+                lastSeq = rs.getInt(1);
+                byte[] data = rs.getBytes(2);
+                chunk = new ByteArrayInputStream(data);
+                fetched += data.length;
+                return true;
+            } catch (SQLException e) {
+                throw new IOException("Ciphertext read failed (id=" + itemId + ")", e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            chunk = InputStream.nullInputStream();
+            try {
+                if (rs != null) rs.close();
+                ps.close();
+            } catch (SQLException e) {
+                throw new IOException(e);
+            } finally {
+                try {
+                    con.close();
+                } catch (SQLException ignored) {}
+            }
+        }
+    }
+
     @Override
     public boolean deleteForUser(int itemId, int userId) throws Exception {
         String sql = "DELETE FROM secure_items WHERE id = ? AND user_id = ?";
@@ -132,4 +445,105 @@ public class SecureItemDAOImpl implements SecureItemDAO {
             return ps.executeUpdate() > 0;
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public boolean updateWrappedDek(int itemId, int userId, String expectedDekAlg, byte[] encryptedDek, String dekAlg) throws Exception {
+        String sql = "UPDATE secure_items SET encrypted_dek = ?, dek_alg = ? WHERE id = ? AND user_id = ? AND dek_alg = ?";
+
+        try (Connection con = DatabaseManager.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+
+            ps.setBytes(1, encryptedDek);
+            ps.setString(2, dekAlg);
+            ps.setInt(3, itemId);
+            ps.setInt(4, userId);
+            ps.setString(5, expectedDekAlg);
+
+            return ps.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public List<WrappedDek> listWrappedDeks(int userId, int afterId, int limit) throws Exception {
+        // Parcours par (user_id, id) : couvert par l'index de la clé étrangère, pas d'OFFSET
+        String sql = """
+            SELECT id, encrypted_dek, dek_alg
+            FROM secure_items
+            WHERE user_id = ? AND id > ?
+            ORDER BY id
+            LIMIT ?
+            """;
+
+        List<WrappedDek> out = new ArrayList<>();
+        try (Connection con = DatabaseManager.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+
+            ps.setInt(1, userId);
+            ps.setInt(2, afterId);
+            ps.setInt(3, limit);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    out.add(new WrappedDek(rs.getInt("id"), rs.getBytes("encrypted_dek"), rs.getString("dek_alg")));
+                }
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public int updateWrappedDeks(int userId, List<RewrappedDek> updates) throws Exception {
+        if (updates.isEmpty()) return 0;
+        String sql = "UPDATE secure_items SET encrypted_dek = ?, dek_alg = ? WHERE id = ? AND user_id = ? AND encrypted_dek = ?";
+
+        try (Connection con = DatabaseManager.getConnection()) {
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(sql)) {
+                for (RewrappedDek u : updates) {
+                    ps.setBytes(1, u.encryptedDek());
+                    ps.setString(2, u.dekAlg());
+                    ps.setInt(3, u.id());
+                    ps.setInt(4, userId);
+                    ps.setBytes(5, u.previousDek());
+                    ps.addBatch();
+                }
+                int[] counts = ps.executeBatch();
+                int updated = 0;
+                List<RewrappedDek> unknown = new ArrayList<>();
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] > 0) updated++;
+                    // SUCCESS_NO_INFO (-2) : le driver ne sait pas si le compare-and-set a porté
+                    else if (counts[i] == Statement.SUCCESS_NO_INFO) unknown.add(updates.get(i));
+                }
+                updated += countRewrapped(con, userId, unknown);
+                con.commit();
+                return updated;
+            } catch (Exception e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    /** Relecture, dans la transaction en cours, des lignes dont le lot n'a pas donné le compte : portent-elles la nouvelle DEK ? */
+    private static int countRewrapped(Connection con, int userId, List<RewrappedDek> rows) throws SQLException {
+        if (rows.isEmpty()) return 0;
+        String sql = "SELECT 1 FROM secure_items WHERE id = ? AND user_id = ? AND encrypted_dek = ?";
+
+        int confirmed = 0;
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            for (RewrappedDek u : rows) {
+                ps.setInt(1, u.id());
+                ps.setInt(2, userId);
+                ps.setBytes(3, u.encryptedDek());
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) confirmed++;
+                }
+            }
+        }
+        return confirmed;
+    }
+}
@@ -7,7 +7,11 @@ import cryptographie.maya.model.User;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public class UserDAOImpl implements UserDAO {
@@ -96,6 +100,92 @@ public class UserDAOImpl implements UserDAO {
         }
     }
 
+    @Override
+    public Map<Integer, String> getPublicKeysByIds(Collection<Integer> userIds) throws Exception {
+        Map<Integer, String> out = new HashMap<>();
+        if (userIds == null || userIds.isEmpty()) return out;
+
+        List<Integer> ids = new ArrayList<>(userIds);
+        int batch = 500; // garde la clause IN raisonnable
+        try (Connection con = DatabaseManager.getConnection()) {
+            for (int from = 0; from < ids.size(); from += batch) {
+                List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + batch));
+                String sql = "SELECT id, public_key FROM users WHERE id IN ("
+                        + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")";
+
+                try (PreparedStatement ps = con.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) ps.setInt(i + 1, chunk.get(i));
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) out.put(rs.getInt("id"), rs.getString("public_key"));
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public byte[] getWrappedMasterKey(int userId) throws Exception {
+        String sql = "SELECT wrapped_umk FROM users WHERE id = ?";
+
+        try (Connection con = DatabaseManager.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+
+            ps.setInt(1, userId);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+                return rs.getBytes("wrapped_umk");
+            }
+        }
+    }
+
+    @Override
+    public boolean setWrappedMasterKeyIfAbsent(int userId, byte[] wrappedMasterKey) throws Exception {
+        String sql = "UPDATE users SET wrapped_umk = ? WHERE id = ? AND wrapped_umk IS NULL";
+        try (Connection con = DatabaseManager.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setBytes(1, wrappedMasterKey);
+            ps.setInt(2, userId);
+            return ps.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public boolean updatePasswordHash(int userId, String expectedOldHash, String newHash) throws Exception {
+        String sql = "UPDATE users SET password_hash = ? WHERE id = ? AND password_hash = ?";
+        try (Connection con = DatabaseManager.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setString(1, newHash);
+            ps.setInt(2, userId);
+            ps.setString(3, expectedOldHash);
+            return ps.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public long countLegacyPasswordHashes() throws Exception {
+        String sql = "SELECT COUNT(*) FROM users WHERE password_hash LIKE '$2%'";
+        try (Connection con = DatabaseManager.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    @Override
+    public boolean replaceUserKeys(int userId, byte[] expectedWrappedMasterKey, String publicKeyB64, byte[] wrappedMasterKey) throws Exception {
+        String sql = "UPDATE users SET public_key = ?, wrapped_umk = ? WHERE id = ? AND wrapped_umk = ?";
+        try (Connection con = DatabaseManager.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setString(1, publicKeyB64);
+            ps.setBytes(2, wrappedMasterKey);
+            ps.setInt(3, userId);
+            ps.setBytes(4, expectedWrappedMasterKey);
+            return ps.executeUpdate() > 0;
+        }
+    }
+
     // --- Nouveaux : listAll / updateRole / deleteById ---
 
     @Override
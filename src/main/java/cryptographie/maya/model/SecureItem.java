@@ -11,9 +11,10 @@ public class SecureItem {
 
     // Crypto fields
     private byte[] encryptedData; // LONGBLOB (ciphertext)
-    private byte[] iv;            // VARBINARY(12) for AES-GCM
-    private byte[] encryptedDek;  // VARBINARY(512) (RSA-OAEP wrapped DEK)
-    private String dekAlg;        // e.g. "RSA-OAEP"
+    private byte[] iv;            // VARBINARY(12) for AES-GCM (7-byte nonce prefix for segmented items)
+    private byte[] encryptedDek;  // VARBINARY(512) (RSA-OAEP, ECIES-X25519 or AES-KW wrapped DEK)
+    private String dekAlg;        // e.g. "RSA-OAEP", "AES-KW-UMK+SEG" (wrapping alg + envelope format)
+    private long encryptedSize;   // encrypted_size column (ciphertext length), filled when encryptedData itself isn't loaded
 
     private LocalDateTime createdAt;
 
@@ -93,6 +94,14 @@ public class SecureItem {
         this.dekAlg = dekAlg;
     }
 
+    public long getEncryptedSize() {
+        return encryptedSize;
+    }
+
+    public void setEncryptedSize(long encryptedSize) {
+        this.encryptedSize = encryptedSize;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
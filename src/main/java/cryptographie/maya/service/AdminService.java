@@ -39,7 +39,9 @@ public class AdminService {
     public boolean deleteUser(int userId) throws Exception {
         // Selon ton schéma, supprimer l'utilisateur devrait cascade sur secure_items si FK ON DELETE CASCADE,
         // sinon assure-toi de supprimer d'abord ses items via secureItemDao.deleteByUserId(userId) si nécessaire.
-        return userDao.deleteById(userId);
+        boolean deleted = userDao.deleteById(userId);
+        PublicKeyCache.shared().invalidate(userId);
+        return deleted;
     }
 
     /**
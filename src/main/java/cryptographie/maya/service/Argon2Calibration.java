@@ -0,0 +1,134 @@
+package cryptographie.maya.service;
+
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Choix des paramètres Argon2id pour cette machine : une latence cible par hash et un budget
+ * mémoire partagé par {@code concurrency} vérifications simultanées (celui de {@link PasswordVerifier}).
+ *
+ * 1. mémoire par hash = budget / concurrence, bornée à [{@link #MIN_MEMORY_KIB}, 1 Gio] ;
+ * 2. si t=1 dépasse déjà la cible, la mémoire est divisée par deux (jamais sous le plancher) ;
+ * 3. puis t augmente tant que la cible est tenue ({@link #MAX_ITERATIONS} au plus).
+ * Chaque point est la médiane de {@link #SAMPLES} hashes après un échauffement. Le rapport donne
+ * aussi la vérification BCrypt (coût 10) des comptes historiques, pour comparaison.
+ */
+public final class Argon2Calibration {
+
+    /** Plancher mémoire (19 Mio, recommandation OWASP pour Argon2id). */
+    static final int MIN_MEMORY_KIB = 19 * 1024;
+    static final int MAX_MEMORY_KIB = 1024 * 1024;
+    static final int MAX_ITERATIONS = 10;
+    static final int SAMPLES = 3;
+
+    private static final char[] PROBE = "calibration-probe".toCharArray();
+
+    private Argon2Calibration() {}
+
+    public record Measurement(PasswordPolicy policy, String operation, double millis) {
+    }
+
+    /** {@link #toString()} : tableau des mesures, politique retenue et capacité qui en découle. */
+    public record Report(List<Measurement> measurements, PasswordPolicy chosen, double chosenMillis,
+                         long targetMillis, long memoryBudgetKiB, int concurrency, long millis) {
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("Argon2id calibration (%d cores, Java %s, %d ms): target %d ms, budget %d MiB for %d concurrent logins%n",
+                    Runtime.getRuntime().availableProcessors(), System.getProperty("java.version"), millis,
+                    targetMillis, memoryBudgetKiB / 1024, concurrency));
+            sb.append(String.format("  %-8s %4s %10s %3s %10s%n", "op", "t", "m (KiB)", "p", "ms"));
+            for (Measurement m : measurements) {
+                PasswordPolicy p = m.policy();
+                sb.append(String.format("  %-8s %4s %10s %3s %10.1f%n", m.operation(),
+                        p == null ? "-" : p.iterations(), p == null ? "-" : p.memoryKiB(), p == null ? "-" : p.parallelism(),
+                        m.millis()));
+            }
+            long workers = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), memoryBudgetKiB / chosen.memoryKiB()));
+            sb.append(String.format("  chosen: t=%d, m=%d KiB, p=%d (%.1f ms%s); %d verify workers, ~%.0f logins/s%n",
+                    chosen.iterations(), chosen.memoryKiB(), chosen.parallelism(), chosenMillis,
+                    chosenMillis > targetMillis ? ", above target at the memory floor" : "",
+                    workers, workers * 1000.0 / chosenMillis));
+            return sb.toString();
+        }
+    }
+
+    public static Report calibrate(long targetMillis, long memoryBudgetKiB, int concurrency, int parallelism) {
+        if (targetMillis < 1 || concurrency < 1) throw new IllegalArgumentException("target and concurrency must be >= 1");
+        long start = System.nanoTime();
+        List<Measurement> all = new ArrayList<>();
+
+        int memory = (int) Math.max(MIN_MEMORY_KIB, Math.min(MAX_MEMORY_KIB, memoryBudgetKiB / concurrency));
+        memory -= memory % 1024;
+        PasswordPolicy chosen = new PasswordPolicy(1, memory, parallelism);
+        double chosenMillis = measureHash(chosen, all);
+        while (chosenMillis > targetMillis && chosen.memoryKiB() > MIN_MEMORY_KIB) {
+            chosen = new PasswordPolicy(1, Math.max(MIN_MEMORY_KIB, chosen.memoryKiB() / 2), parallelism);
+            chosenMillis = measureHash(chosen, all);
+        }
+        while (chosen.iterations() < MAX_ITERATIONS) {
+            PasswordPolicy next = new PasswordPolicy(chosen.iterations() + 1, chosen.memoryKiB(), parallelism);
+            double ms = measureHash(next, all);
+            if (ms > targetMillis) break;
+            chosen = next;
+            chosenMillis = ms;
+        }
+
+        all.add(new Measurement(chosen, "verify", measureVerify(chosen)));
+        all.add(new Measurement(null, "bcrypt", measureBCrypt()));
+        return new Report(all, chosen, chosenMillis, targetMillis, memoryBudgetKiB, concurrency,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static double measureHash(PasswordPolicy policy, List<Measurement> out) {
+        policy.hash(PROBE);
+        double[] ms = new double[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            long t0 = System.nanoTime();
+            policy.hash(PROBE);
+            ms[i] = (System.nanoTime() - t0) / 1e6;
+        }
+        double median = median(ms);
+        out.add(new Measurement(policy, "hash", median));
+        return median;
+    }
+
+    private static double measureVerify(PasswordPolicy policy) {
+        String hash = policy.hash(PROBE);
+        PasswordVerifier verifier = new PasswordVerifier(policy.memoryKiB(), 1, Long.MAX_VALUE, policy);
+        try {
+            double[] ms = new double[SAMPLES];
+            for (int i = 0; i < SAMPLES; i++) {
+                long t0 = System.nanoTime();
+                verifier.verify(hash, PROBE);
+                ms[i] = (System.nanoTime() - t0) / 1e6;
+            }
+            return median(ms);
+        } catch (PasswordVerifier.Overloaded | InterruptedException e) {
+            throw new IllegalStateException("verification during calibration failed", e);
+        } finally {
+            verifier.close();
+        }
+    }
+
+    private static double measureBCrypt() {
+        String pw = new String(PROBE);
+        String hash = BCrypt.hashpw(pw, BCrypt.gensalt(10));
+        double[] ms = new double[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            long t0 = System.nanoTime();
+            BCrypt.checkpw(pw, hash);
+            ms[i] = (System.nanoTime() - t0) / 1e6;
+        }
+        return median(ms);
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
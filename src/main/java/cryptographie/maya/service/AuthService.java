@@ -3,11 +3,7 @@ package cryptographie.maya.service;
 import cryptographie.maya.dao.UserDAO;
 import cryptographie.maya.dao.impl.UserDAOImpl;
 import cryptographie.maya.model.User;
-import de.mkammerer.argon2.Argon2;
-import de.mkammerer.argon2.Argon2Factory;
-import org.mindrot.jbcrypt.BCrypt;
 
-import java.sql.Connection;
 import java.util.Optional;
 
 /**
@@ -16,56 +12,93 @@ import java.util.Optional;
 public class AuthService {
 
     private final UserDAO userDAO;
+    private final PasswordVerifier verifier;
+    private final PasswordMigrator migrator;
+    private final LoginThrottle throttle;
 
     public AuthService() {
         this(new UserDAOImpl());
     }
 
     public AuthService(UserDAO userDAO) {
+        this(userDAO, PasswordVerifier.shared());
+    }
+
+    public AuthService(UserDAO userDAO, PasswordVerifier verifier) {
+        this(userDAO, verifier, PasswordMigrator.shared());
+    }
+
+    public AuthService(UserDAO userDAO, PasswordVerifier verifier, PasswordMigrator migrator) {
+        this(userDAO, verifier, migrator, LoginThrottle.shared());
+    }
+
+    public AuthService(UserDAO userDAO, PasswordVerifier verifier, PasswordMigrator migrator, LoginThrottle throttle) {
         this.userDAO = userDAO;
+        this.verifier = verifier;
+        this.migrator = migrator;
+        this.throttle = throttle;
     }
 
     public LoginResult login(String username, char[] passwordAttempt) throws Exception {
+        return login(username, passwordAttempt, null);
+    }
+
+    /**
+     * {@code source} identifie l'origine de la tentative (adresse, poste) pour la limiter aussi ;
+     * null si l'appelant n'en a pas.
+     */
+    public LoginResult login(String username, char[] passwordAttempt, String source) throws Exception {
         if (username == null || username.isBlank() || passwordAttempt == null || passwordAttempt.length == 0) {
             throw new AuthException("EMPTY_CREDENTIALS");
         }
 
+        // Refus en mémoire avant la base et Argon2 : trop d'essais, ou compte connu comme inexistant
+        if (throttle.tryAcquire(username, source) != LoginThrottle.Verdict.ALLOWED) {
+            throw new AuthException("TOO_MANY_ATTEMPTS");
+        }
+        if (throttle.isKnownMissing(username)) throw new AuthException("USER_NOT_FOUND");
+
         Optional<User> userOpt = userDAO.findByUsername(username);
-        if (userOpt.isEmpty()) throw new AuthException("USER_NOT_FOUND");
+        if (userOpt.isEmpty()) {
+            throttle.markMissing(username);
+            throw new AuthException("USER_NOT_FOUND");
+        }
 
         User user = userOpt.get();
         String storedHash = user.getPasswordHash();
         String role = (user.getRole() == null || user.getRole().isBlank()) ? "USER" : user.getRole();
 
-        Argon2 argon2 = Argon2Factory.create(Argon2Factory.Argon2Types.ARGON2id);
-        try {
-            boolean verified;
-            boolean needsMigration = false;
-
-            if (storedHash != null && storedHash.startsWith("$argon2")) {
-                verified = argon2.verify(storedHash, passwordAttempt);
-            } else if (storedHash != null && storedHash.startsWith("$2")) {
-                verified = BCrypt.checkpw(new String(passwordAttempt), storedHash);
-                needsMigration = true;
-            } else {
-                throw new AuthException("INVALID_HASH_FORMAT");
-            }
+        if (storedHash == null || !(storedHash.startsWith("$argon2") || storedHash.startsWith("$2"))) {
+            throw new AuthException("INVALID_HASH_FORMAT");
+        }
+        // BCrypt, ou Argon2 calculé avec d'autres paramètres que la politique courante
+        boolean needsMigration = PasswordPolicy.current().needsRehash(storedHash);
 
-            if (!verified) throw new AuthException("AUTH_FAILED");
+        // Pool partagé borné par un budget mémoire : une rafale de logins attend ou est refusée
+        boolean verified;
+        try {
+            verified = verifier.verify(storedHash, passwordAttempt);
+        } catch (PasswordVerifier.Overloaded e) {
+            throw new AuthException("SERVER_BUSY");
+        }
+        if (!verified) throw new AuthException("AUTH_FAILED");
+        throttle.succeeded(username);
 
-            // Optionnel: migration BCrypt -> Argon2 (si tu veux la garder)
-            if (needsMigration) {
-                // NOTE: ici on doit faire un UPDATE users.password_hash.
-                // Comme ton UserDAO n'a pas updatePasswordHash(), on te le rajoutera après.
-                // Pour l’instant: on laisse désactivé ou on fera un patch ensuite.
-            }
+        // Rehash en arrière-plan : la réponse du login n'attend pas Argon2
+        if (needsMigration) {
+            migrator.submit(user.getId(), storedHash, passwordAttempt);
+        }
 
-            return new LoginResult(user.getId(), username, role);
+        return new LoginResult(user.getId(), username, role);
+    }
 
-        } finally {
-            // important: argon2-jvm 2.11 ne supporte pas try-with-resources chez toi
+    /** Avancement de la migration BCrypt -> Argon2 (dont le nombre de hashes BCrypt restants). */
+    public PasswordMigrator.Stats passwordMigrationStats() {
+        return migrator.stats();
+    }
 
-        }
+    public LoginThrottle.Stats throttleStats() {
+        return throttle.stats();
     }
 
     public record LoginResult(int userId, String username, String role) {}
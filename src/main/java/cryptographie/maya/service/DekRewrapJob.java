@@ -0,0 +1,267 @@
+package cryptographie.maya.service;
+
+import cryptographie.maya.crypto.DekWrapper;
+import cryptographie.maya.crypto.FileCryptoEnvelope;
+import cryptographie.maya.dao.SecureItemDAO;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Ré-enveloppe en masse les DEK d'un utilisateur (rotation de clé, changement d'algorithme)
+ * sans jamais lire ni réécrire le ciphertext (secure_item_chunks) : seules les colonnes encrypted_dek / dek_alg bougent.
+ *
+ * Les lignes (id, encrypted_dek, dek_alg) sont lues par pages dans l'ordre des id (pagination par
+ * clé, la page suivante est chargée pendant le traitement de la courante), ré-enveloppées en
+ * parallèle puis écrites par lots, une transaction par page, en compare-and-set sur l'ancienne DEK
+ * enveloppée. Après chaque page, le dernier id traité est écrit dans le fichier de checkpoint :
+ * un job interrompu reprend là où il s'était arrêté. Le fichier est supprimé en fin de job.
+ */
+public class DekRewrapJob {
+
+    /** Déballage selon l'algorithme d'enveloppe de la ligne ; null = ligne laissée telle quelle. */
+    @FunctionalInterface
+    public interface UnwrapperResolver {
+        DekWrapper unwrapperFor(String wrapAlg) throws Exception;
+    }
+
+    /** Compteurs cumulés depuis le début du job, reprises comprises. */
+    public record Progress(int userId, long scanned, long rewrapped, long skipped, long conflicts, long failed,
+                           int lastId, long elapsedMillis, boolean done) {
+        public double itemsPerSecond() {
+            return elapsedMillis == 0 ? 0 : scanned * 1000.0 / elapsedMillis;
+        }
+    }
+
+    private final SecureItemDAO secureItemDAO;
+    private final int userId;
+    private final UnwrapperResolver from;
+    private final DekWrapper to;
+    private final Path checkpointFile;
+
+    private int pageSize = 1000;
+    private int workers = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private int maxItemsPerSecond;
+    private Consumer<Progress> listener = p -> {};
+
+    private final List<Integer> failedIds = new ArrayList<>();
+
+    public DekRewrapJob(SecureItemDAO secureItemDAO, int userId, UnwrapperResolver from, DekWrapper to, Path checkpointFile) {
+        this.secureItemDAO = secureItemDAO;
+        this.userId = userId;
+        this.from = from;
+        this.to = to;
+        this.checkpointFile = checkpointFile;
+    }
+
+    public DekRewrapJob pageSize(int pageSize) {
+        if (pageSize < 1) throw new IllegalArgumentException("pageSize must be >= 1");
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    public DekRewrapJob workers(int workers) {
+        if (workers < 1) throw new IllegalArgumentException("workers must be >= 1");
+        this.workers = workers;
+        return this;
+    }
+
+    /** Plafond de débit (lignes lues par seconde) pour ménager la base ; 0 = illimité. */
+    public DekRewrapJob maxItemsPerSecond(int maxItemsPerSecond) {
+        if (maxItemsPerSecond < 0) throw new IllegalArgumentException("maxItemsPerSecond must be >= 0");
+        this.maxItemsPerSecond = maxItemsPerSecond;
+        return this;
+    }
+
+    /** Appelé après chaque page (depuis le thread du job). */
+    public DekRewrapJob onProgress(Consumer<Progress> listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /** Ids dont la DEK n'a pas pu être déballée pendant ce run (100 premiers). */
+    public List<Integer> failedIds() {
+        synchronized (failedIds) {
+            return List.copyOf(failedIds);
+        }
+    }
+
+    public Progress run() throws Exception {
+        Properties cp = loadCheckpoint();
+        int lastId = Integer.parseInt(cp.getProperty("lastId", "0"));
+        long scanned = Long.parseLong(cp.getProperty("scanned", "0"));
+        long rewrapped = Long.parseLong(cp.getProperty("rewrapped", "0"));
+        long skipped = Long.parseLong(cp.getProperty("skipped", "0"));
+        long conflicts = Long.parseLong(cp.getProperty("conflicts", "0"));
+        long failed = Long.parseLong(cp.getProperty("failed", "0"));
+        long elapsedBefore = Long.parseLong(cp.getProperty("elapsedMillis", "0"));
+        long scannedThisRun = 0;
+
+        long start = System.nanoTime();
+        AtomicInteger n = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers + 1, r -> {
+            Thread t = new Thread(r, "dek-rewrap-" + userId + "-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            int after = lastId;
+            CompletableFuture<List<SecureItemDAO.WrappedDek>> next =
+                    CompletableFuture.supplyAsync(() -> fetch(after), pool);
+            while (true) {
+                List<SecureItemDAO.WrappedDek> page = join(next);
+                if (page.isEmpty()) break;
+
+                int pageLastId = page.get(page.size() - 1).id();
+                next = page.size() < pageSize
+                        ? CompletableFuture.completedFuture(List.of())
+                        : CompletableFuture.supplyAsync(() -> fetch(pageLastId), pool);
+
+                Batch batch = rewrapPage(page, pool);
+                int written = secureItemDAO.updateWrappedDeks(userId, batch.updates);
+
+                scanned += page.size();
+                scannedThisRun += page.size();
+                rewrapped += written;
+                conflicts += batch.updates.size() - written;
+                skipped += batch.skipped;
+                failed += batch.failed;
+                lastId = pageLastId;
+
+                long elapsedMillis = elapsedBefore + (System.nanoTime() - start) / 1_000_000;
+                saveCheckpoint(lastId, scanned, rewrapped, skipped, conflicts, failed, elapsedMillis);
+                listener.accept(new Progress(userId, scanned, rewrapped, skipped, conflicts, failed, lastId, elapsedMillis, false));
+                throttle(scannedThisRun, start);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Files.deleteIfExists(checkpointFile);
+        Progress done = new Progress(userId, scanned, rewrapped, skipped, conflicts, failed, lastId,
+                elapsedBefore + (System.nanoTime() - start) / 1_000_000, true);
+        listener.accept(done);
+        return done;
+    }
+
+    // --- internes ---
+
+    private static final class Batch {
+        final List<SecureItemDAO.RewrappedDek> updates = new ArrayList<>();
+        int skipped;
+        int failed;
+    }
+
+    private Batch rewrapPage(List<SecureItemDAO.WrappedDek> page, ExecutorService pool) throws Exception {
+        int chunk = (page.size() + workers - 1) / workers;
+        List<Future<Batch>> parts = new ArrayList<>();
+        for (int i = 0; i < page.size(); i += chunk) {
+            List<SecureItemDAO.WrappedDek> rows = page.subList(i, Math.min(page.size(), i + chunk));
+            parts.add(pool.submit(() -> rewrapRows(rows)));
+        }
+        Batch all = new Batch();
+        for (Future<Batch> f : parts) {
+            Batch b = f.get();
+            all.updates.addAll(b.updates);
+            all.skipped += b.skipped;
+            all.failed += b.failed;
+        }
+        return all;
+    }
+
+    private Batch rewrapRows(List<SecureItemDAO.WrappedDek> rows) {
+        Batch b = new Batch();
+        for (SecureItemDAO.WrappedDek row : rows) {
+            byte[] dek = null;
+            try {
+                DekWrapper unwrapper = from.unwrapperFor(FileCryptoEnvelope.wrapAlgOf(row.dekAlg()));
+                if (unwrapper == null) {
+                    b.skipped++;
+                    continue;
+                }
+                dek = unwrapper.unwrap(row.encryptedDek());
+                String newAlg = row.dekAlg() == null ? to.alg() : FileCryptoEnvelope.withWrapAlg(row.dekAlg(), to.alg());
+                b.updates.add(new SecureItemDAO.RewrappedDek(row.id(), row.encryptedDek(), to.wrap(dek), newAlg));
+            } catch (Exception e) {
+                b.failed++;
+                synchronized (failedIds) {
+                    if (failedIds.size() < 100) failedIds.add(row.id());
+                }
+            } finally {
+                if (dek != null) Arrays.fill(dek, (byte) 0);
+            }
+        }
+        return b;
+    }
+
+    private List<SecureItemDAO.WrappedDek> fetch(int afterId) {
+        try {
+            return secureItemDAO.listWrappedDeks(userId, afterId, pageSize);
+        } catch (Exception e) {
+            throw new IllegalStateException("DEK page read failed after id=" + afterId, e);
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> f) throws Exception {
+        try {
+            return f.join();
+        } catch (java.util.concurrent.CompletionException e) {
+            if (e.getCause() instanceof Exception cause) throw cause;
+            throw e;
+        }
+    }
+
+    private void throttle(long scannedThisRun, long startNanos) throws InterruptedException {
+        if (maxItemsPerSecond == 0) return;
+        long dueNanos = scannedThisRun * 1_000_000_000L / maxItemsPerSecond;
+        long aheadMillis = (dueNanos - (System.nanoTime() - startNanos)) / 1_000_000;
+        if (aheadMillis > 0) Thread.sleep(aheadMillis);
+    }
+
+    private Properties loadCheckpoint() throws IOException {
+        Properties p = new Properties();
+        if (!Files.exists(checkpointFile)) return p;
+        try (InputStream in = Files.newInputStream(checkpointFile)) {
+            p.load(in);
+        }
+        if (!String.valueOf(userId).equals(p.getProperty("userId")) || !to.alg().equals(p.getProperty("targetAlg"))) {
+            throw new IllegalStateException("Checkpoint " + checkpointFile + " belongs to another job");
+        }
+        return p;
+    }
+
+    private void saveCheckpoint(int lastId, long scanned, long rewrapped, long skipped, long conflicts, long failed,
+                                long elapsedMillis) throws IOException {
+        Properties p = new Properties();
+        p.setProperty("userId", String.valueOf(userId));
+        p.setProperty("targetAlg", to.alg());
+        p.setProperty("lastId", String.valueOf(lastId));
+        p.setProperty("scanned", String.valueOf(scanned));
+        p.setProperty("rewrapped", String.valueOf(rewrapped));
+        p.setProperty("skipped", String.valueOf(skipped));
+        p.setProperty("conflicts", String.valueOf(conflicts));
+        p.setProperty("failed", String.valueOf(failed));
+        p.setProperty("elapsedMillis", String.valueOf(elapsedMillis));
+
+        if (checkpointFile.getParent() != null) Files.createDirectories(checkpointFile.getParent());
+        Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            p.store(out, "DEK re-wrap checkpoint");
+        }
+        Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -1,6 +1,9 @@
 package cryptographie.maya.service;
 
 import cryptographie.maya.crypto.CryptoService;
+import cryptographie.maya.crypto.DekWrapper;
+import cryptographie.maya.crypto.FileCryptoEnvelope;
+import cryptographie.maya.crypto.ParallelSegmentCipher;
 import cryptographie.maya.crypto.RsaKeyManager;
 import cryptographie.maya.dao.SecureItemDAO;
 import cryptographie.maya.dao.UserDAO;
@@ -8,113 +11,320 @@ import cryptographie.maya.dao.impl.SecureItemDAOImpl;
 import cryptographie.maya.dao.impl.UserDAOImpl;
 import cryptographie.maya.model.SecureItem;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.PrivateKey;
-import java.security.PublicKey;
 import java.util.List;
-import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 
 public class DriveService {
 
+    /** Au-delà de cette taille, les segments sont (dé)chiffrés en parallèle sur tous les cœurs. */
+    private static final long PARALLEL_THRESHOLD = 8L * 1024 * 1024;
+
     private final UserDAO userDAO;
     private final SecureItemDAO secureItemDAO;
     private final CryptoService cryptoService;
+    private final MasterKeyService masterKeys;
 
     public DriveService() {
         this(new UserDAOImpl(), new SecureItemDAOImpl(), new CryptoService());
     }
 
     public DriveService(UserDAO userDAO, SecureItemDAO secureItemDAO, CryptoService cryptoService) {
+        this(userDAO, secureItemDAO, cryptoService, new MasterKeyService(userDAO));
+    }
+
+    public DriveService(UserDAO userDAO, SecureItemDAO secureItemDAO, CryptoService cryptoService, MasterKeyService masterKeys) {
         this.userDAO = userDAO;
         this.secureItemDAO = secureItemDAO;
         this.cryptoService = cryptoService;
+        this.masterKeys = masterKeys;
     }
 
-    public int addFile(int userId, String username, String title, Path filePath) throws Exception {
+    // Toutes les opérations agissent pour l'utilisateur de la session : ses clés passent par le cache de la session
+
+    public int addFile(Session session, String title, Path filePath) throws Exception {
         if (title == null || title.isBlank()) throw new IllegalArgumentException("title is required");
         if (filePath == null) throw new IllegalArgumentException("filePath is required");
 
-        byte[] plain = Files.readAllBytes(filePath);
+        int userId = session.userId();
         long size = Files.size(filePath);
 
-        String publicKeyB64 = userDAO.getPublicKeyById(userId);
-        if (publicKeyB64 == null || publicKeyB64.isBlank()) {
-            throw new IllegalStateException("Public key not found for userId=" + userId);
-        }
-        PublicKey userPk = RsaKeyManager.publicKeyFromBase64(publicKeyB64);
-
-        var payload = cryptoService.encryptForUser(plain, userPk, userId, "file");
+        // Chiffrement en flux jusqu'à la base : ni le clair ni le ciphertext ne sont chargés entièrement en mémoire,
+        // le driver tire l'enveloppe au rythme de l'envoi pendant que le moteur scelle les segments suivants en parallèle
+        Lock permit = uploadPermit(userId);
+        try (DekWrapper wrapper = uploadWrapper(session);
+             FileCryptoEnvelope.SealingStream sealed = cryptoService.sealingStream(Files.newInputStream(filePath), size, wrapper, userId,
+                     "file", ParallelSegmentCipher.shared())) {
+            SecureItem item = new SecureItem();
+            item.setUserId(userId);
+            item.setTitle(title);
+            item.setItemType("file");
+            item.setFileSize(size);
+            item.setIv(sealed.key().iv());
+            item.setEncryptedDek(sealed.key().encryptedDek());
+            item.setDekAlg(sealed.key().dekAlg());
 
-        SecureItem item = new SecureItem();
-        item.setUserId(userId);
-        item.setTitle(title);
-        item.setItemType("file");
-        item.setFileSize(size);
-        item.setEncryptedData(payload.encryptedData());
-        item.setIv(payload.iv());
-        item.setEncryptedDek(payload.encryptedDek());
-        item.setDekAlg(payload.dekAlg());
-
-        return secureItemDAO.create(item);
+            return secureItemDAO.create(item, sealed);
+        } finally {
+            permit.unlock();
+        }
     }
 
-    public int addNote(int userId, String title, String noteText) throws Exception {
+    public int addNote(Session session, String title, String noteText) throws Exception {
         if (title == null || title.isBlank()) throw new IllegalArgumentException("title is required");
         if (noteText == null) noteText = "";
 
-        String publicKeyB64 = userDAO.getPublicKeyById(userId);
-        if (publicKeyB64 == null || publicKeyB64.isBlank()) {
-            throw new IllegalStateException("Public key not found for userId=" + userId);
-        }
-        var userPk = RsaKeyManager.publicKeyFromBase64(publicKeyB64);
+        int userId = session.userId();
         byte[] plain = noteText.getBytes(java.nio.charset.StandardCharsets.UTF_8);
 
-        var payload = cryptoService.encryptForUser(plain, userPk, userId, "note");
+        Lock permit = uploadPermit(userId);
+        try (DekWrapper wrapper = uploadWrapper(session)) {
+            var payload = cryptoService.encryptForUser(plain, wrapper, userId, "note");
 
-        SecureItem item = new SecureItem();
-        item.setUserId(userId);
-        item.setTitle(title);
-        item.setItemType("note");
-        item.setFileSize(plain.length);
-        item.setEncryptedData(payload.encryptedData());
-        item.setIv(payload.iv());
-        item.setEncryptedDek(payload.encryptedDek());
-        item.setDekAlg(payload.dekAlg());
+            SecureItem item = new SecureItem();
+            item.setUserId(userId);
+            item.setTitle(title);
+            item.setItemType("note");
+            item.setFileSize(plain.length);
+            item.setEncryptedData(payload.encryptedData());
+            item.setIv(payload.iv());
+            item.setEncryptedDek(payload.encryptedDek());
+            item.setDekAlg(payload.dekAlg());
+
+            return secureItemDAO.create(item);
+        } finally {
+            permit.unlock();
+        }
+    }
 
-        return secureItemDAO.create(item);
+    public List<SecureItem> listItems(Session session) throws Exception {
+        return secureItemDAO.listByUserId(session.userId());
     }
 
-    public List<SecureItem> listItems(int userId) throws Exception {
-        return secureItemDAO.listByUserId(userId);
+    /** Suivi d'un téléchargement : octets en clair écrits sur {@code total} (taille de l'item). */
+    @FunctionalInterface
+    public interface DownloadProgress {
+        void update(long written, long total);
     }
 
-    public byte[] downloadItemBytes(int userId, String username, int itemId) throws Exception {
-        Optional<SecureItem> opt = secureItemDAO.findByIdForUser(itemId, userId);
-        if (opt.isEmpty()) {
-            throw new IllegalArgumentException("Item not found or not owned by user (id=" + itemId + ")");
+    public byte[] downloadItemBytes(Session session, int itemId) throws Exception {
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        downloadItemTo(session, itemId, Channels.newChannel(plain), null);
+        return plain.toByteArray();
+    }
+
+    /**
+     * Déchiffre l'item dans {@code target} : le fichier est écrit à côté (fichier temporaire du même
+     * dossier, réservé au propriétaire sous POSIX), puis renommé atomiquement. Une erreur ou un item
+     * altéré ne laisse ni fichier partiel ni cible écrasée. Retourne le nombre d'octets écrits.
+     */
+    public long downloadItemTo(Session session, int itemId, Path target, DownloadProgress progress) throws Exception {
+        Path dir = target.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, "." + target.getFileName() + ".", ".part");
+        try {
+            long written;
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                written = downloadItemTo(session, itemId, out, progress);
+                out.force(true);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return written;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Déchiffre l'item dans {@code target}, laissé ouvert. Le ciphertext est lu en base par morceaux
+     * et le clair écrit au fil de l'eau : la mémoire utilisée ne dépend pas de la taille de l'item
+     * (sauf enveloppes historiques en un seul bloc). {@code progress} peut être null.
+     */
+    public long downloadItemTo(Session session, int itemId, WritableByteChannel target, DownloadProgress progress) throws Exception {
+        int userId = session.userId();
+        SecureItem item = secureItemDAO.findKeysForUser(itemId, userId)
+                .orElseThrow(() -> new IllegalArgumentException("Item not found or not owned by user (id=" + itemId + ")"));
+        if (item.getIv() == null || item.getEncryptedDek() == null) {
+            throw new IllegalStateException("Encrypted fields missing for item id=" + itemId);
         }
 
-        SecureItem item = opt.get();
+        try (ItemKey key = resolveItemKey(item, session)) {
+            ProgressStream out = new ProgressStream(target, item.getFileSize(), progress);
+
+            if (FileCryptoEnvelope.isSegmented(key.dekAlg())) {
+                try (InputStream encrypted = secureItemDAO.openEncryptedData(itemId, userId, item.getEncryptedSize())) {
+                    if (item.getFileSize() >= PARALLEL_THRESHOLD) {
+                        cryptoService.decryptForUser(encrypted, out, key.encryptedDek(), key.dekAlg(), key.unwrapper(),
+                                userId, item.getItemType(), ParallelSegmentCipher.shared());
+                    } else {
+                        try (InputStream plain = cryptoService.decryptForUser(encrypted, item.getIv(), key.encryptedDek(),
+                                key.dekAlg(), key.unwrapper(), userId, item.getItemType())) {
+                            plain.transferTo(out);
+                        }
+                    }
+                }
+                return out.written;
+            }
+
+            // Enveloppe historique en un seul bloc GCM : déchiffrable seulement entière
+            SecureItem full = secureItemDAO.findByIdForUser(itemId, userId)
+                    .orElseThrow(() -> new IllegalArgumentException("Item not found or not owned by user (id=" + itemId + ")"));
+            if (full.getEncryptedData() == null) {
+                throw new IllegalStateException("Encrypted fields missing for item id=" + itemId);
+            }
+            out.write(cryptoService.decryptForUser(
+                    full.getEncryptedData(),
+                    item.getIv(),
+                    key.encryptedDek(),
+                    key.dekAlg(),
+                    key.unwrapper(),
+                    userId,
+                    item.getItemType()
+            ));
+            return out.written;
+        }
+    }
+
+    /** Écrit dans le canal de l'appelant (sans le fermer) et compte les octets pour {@link DownloadProgress}. */
+    private static final class ProgressStream extends OutputStream {
+        private final WritableByteChannel channel;
+        private final long total;
+        private final DownloadProgress progress;
+        long written;
 
-        if (item.getEncryptedData() == null || item.getIv() == null || item.getEncryptedDek() == null) {
+        ProgressStream(WritableByteChannel channel, long total, DownloadProgress progress) {
+            this.channel = channel;
+            this.total = total;
+            this.progress = progress;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buf = ByteBuffer.wrap(b, off, len);
+            while (buf.hasRemaining()) channel.write(buf);
+            written += len;
+            if (progress != null) progress.update(written, total);
+        }
+    }
+
+    /**
+     * Lecture partielle (aperçu, détection de type, reprise de téléchargement) : octets en clair
+     * {@code [offset, offset + length)}, tronqués à la fin de l'item. Pour un item non compressé, seuls
+     * les segments concernés sont lus en base et déchiffrés : le coût ne dépend pas de la taille du
+     * fichier. Un item compressé ne se décompresse que depuis le début (coût en O(offset)) ; les
+     * fichiers au-delà de {@link cryptographie.maya.crypto.EnvelopeCompression#MAX_SIZE} ne sont
+     * jamais compressés à l'envoi, ce coût reste donc borné, sauf pour les items plus anciens.
+     */
+    public byte[] readRange(Session session, int itemId, long offset, int length) throws Exception {
+        int userId = session.userId();
+        SecureItem item = secureItemDAO.findKeysForUser(itemId, userId)
+                .orElseThrow(() -> new IllegalArgumentException("Item not found or not owned by user (id=" + itemId + ")"));
+        if (item.getIv() == null || item.getEncryptedDek() == null) {
             throw new IllegalStateException("Encrypted fields missing for item id=" + itemId);
         }
 
-        // Load user's private key from local file keys/<username>.pk8
-        PrivateKey sk = RsaKeyManager.loadPrivateKey(username);
+        try (ItemKey key = resolveItemKey(item, session)) {
+            return cryptoService.readRange(
+                    (off, len) -> secureItemDAO.readEncryptedRange(itemId, userId, off, len),
+                    item.getEncryptedSize(),
+                    item.getIv(),
+                    key.encryptedDek(),
+                    key.dekAlg(),
+                    key.unwrapper(),
+                    userId,
+                    item.getItemType(),
+                    offset,
+                    length
+            );
+        }
+    }
+
+    /** DEK enveloppée + de quoi la déballer (via le cache de session), après migration éventuelle vers l'UMK ; fermer efface la KEK. */
+    private record ItemKey(byte[] encryptedDek, String dekAlg, DekWrapper unwrapper) implements AutoCloseable {
+        @Override
+        public void close() {
+            unwrapper.close();
+        }
+    }
+
+    private ItemKey resolveItemKey(SecureItem item, Session session) throws Exception {
+        int userId = session.userId();
+        String username = session.username();
+        SecretCache secrets = session.secrets();
+        String dekAlg = item.getDekAlg();
+        if (FileCryptoEnvelope.DEK_ALG_AES_KW_UMK.equals(FileCryptoEnvelope.wrapAlgOf(dekAlg))) {
+            DekWrapper kw = masterKeys.wrapperFor(session);
+            return new ItemKey(item.getEncryptedDek(), dekAlg, secrets.caching(kw, userId, item.getId()));
+        }
+
+        // DEK enveloppée par la clé publique (RSA-OAEP historique ou ECIES-X25519) :
+        // clé privée locale keys/<username>.pk8 (parsée une fois, puis en cache)
+        PrivateKey sk = secrets.privateKey(username);
+        DekWrapper asym = secrets.caching(DekWrapper.forUserKeys(null, sk), userId, item.getId());
 
-        return cryptoService.decryptForUser(
-                item.getEncryptedData(),
-                item.getIv(),
-                item.getEncryptedDek(),
-                sk,
-                userId,
-                item.getItemType()
-        );
+        // Migration paresseuse : on ré-enveloppe la DEK sous l'UMK (le ciphertext ne change pas),
+        // le prochain téléchargement n'aura plus d'opération asymétrique. Best-effort : en cas d'échec on garde l'enveloppe actuelle.
+        if (dekAlg != null) {
+            DekWrapper kw = null;
+            try {
+                kw = masterKeys.wrapperFor(userId, username, sk);
+                byte[] rewrapped = cryptoService.rewrap(item.getEncryptedDek(), asym, kw);
+                String newAlg = FileCryptoEnvelope.withWrapAlg(dekAlg, kw.alg());
+                secureItemDAO.updateWrappedDek(item.getId(), userId, dekAlg, rewrapped, newAlg);
+                return new ItemKey(rewrapped, newAlg, secrets.caching(kw, userId, item.getId()));
+            } catch (Exception e) {
+                if (kw != null) kw.close();
+                System.err.println("DEK re-wrap skipped for item id=" + item.getId() + ": " + e.getMessage());
+            }
+        }
+        return new ItemKey(item.getEncryptedDek(), dekAlg, asym);
+    }
+
+    /**
+     * Autorisation d'envoi, tenue jusqu'à l'INSERT : refusée pendant une rotation de clés de
+     * l'utilisateur ({@link KeyRotationService#rotateUserKeyPair}), dont le repli sur la clé publique
+     * créerait des items sous une clé sur le point d'être remplacée.
+     */
+    private static Lock uploadPermit(int userId) throws InterruptedException {
+        Lock permit = KeyRotationService.rotationLock(userId).readLock();
+        // tryLock(0, ...) respecte l'équité : une rotation en attente passe avant les nouveaux envois
+        if (!permit.tryLock(0, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Key rotation in progress for this account; retry the upload later");
+        }
+        return permit;
+    }
+
+    /**
+     * Enveloppe des nouvelles DEK : AES-KW sous l'UMK ; repli sur la clé publique (RSA-OAEP ou X25519) si la clé
+     * privée n'est pas disponible sur ce poste pour déballer l'UMK existante.
+     */
+    private DekWrapper uploadWrapper(Session session) throws Exception {
+        try {
+            return masterKeys.wrapperFor(session);
+        } catch (IllegalStateException e) {
+            return masterKeys.publicKeyWrapperFor(session.userId());
+        }
     }
 
-    public boolean deleteItem(int userId, int itemId) throws Exception {
-        return secureItemDAO.deleteForUser(itemId, userId);
+    public boolean deleteItem(Session session, int itemId) throws Exception {
+        session.secrets().invalidateItem(session.userId(), itemId);
+        return secureItemDAO.deleteForUser(itemId, session.userId());
     }
 }
\ No newline at end of file
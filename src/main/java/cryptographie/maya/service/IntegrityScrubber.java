@@ -0,0 +1,349 @@
+package cryptographie.maya.service;
+
+import cryptographie.maya.crypto.DekWrapper;
+import cryptographie.maya.crypto.FileCryptoEnvelope;
+import cryptographie.maya.crypto.KeyDerivation;
+import cryptographie.maya.crypto.RsaKeyManager;
+import cryptographie.maya.crypto.StreamingAesGcm;
+import cryptographie.maya.dao.SecureItemDAO;
+import cryptographie.maya.dao.UserDAO;
+import cryptographie.maya.model.SecureItem;
+import cryptographie.maya.model.User;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Vérification d'intégrité de tout secure_items, en tâche de fond, pour trouver les blobs corrompus
+ * avant qu'un utilisateur ne tombe sur "Déchiffrement échoué".
+ *
+ * Deux niveaux :
+ * <ul>
+ *   <li>structurel (toujours) : dek_alg connu, taille de la DEK enveloppée, en-tête du format segmenté
+ *       et découpage cohérent avec la taille stockée — seuls les premiers octets du blob sont lus ;</li>
+ *   <li>complet (si un {@link KeyResolver} est fourni) : déchiffrement authentifié de tout le blob,
+ *       lu par morceaux, chaque tag GCM vérifié, le clair jeté au fur et à mesure.</li>
+ * </ul>
+ *
+ * Les items sont parcourus par pages (pagination par clé sur l'id) et vérifiés en parallèle sur des
+ * threads de basse priorité ; les lectures de blobs passent par un budget d'octets par seconde pour
+ * ne pas concurrencer les accès interactifs. Le budget compte les octets lus par le serveur (voir
+ * {@link SecureItemDAO#serverBytesForRange}) ; les pages de clés lisent encrypted_size, jamais le blob. Après chaque page, les items en échec sont ajoutés au
+ * rapport (CSV) puis le dernier id est écrit dans le checkpoint : un scrub interrompu reprend là où il
+ * s'était arrêté, en complétant le même rapport.
+ */
+public class IntegrityScrubber {
+
+    /** DEK déballée hors session ; null = pas de clé pour cet utilisateur, item vérifié structurellement seulement. */
+    @FunctionalInterface
+    public interface KeyResolver {
+        DekWrapper unwrapperFor(int userId, String wrapAlg) throws Exception;
+    }
+
+    /** Compteurs cumulés depuis le début du scrub, reprises comprises. */
+    public record Progress(long scanned, long verified, long structuralOnly, long failed, long bytesRead,
+                           int lastId, long elapsedMillis, boolean done) {
+        public double itemsPerSecond() {
+            return elapsedMillis == 0 ? 0 : scanned * 1000.0 / elapsedMillis;
+        }
+    }
+
+    private final SecureItemDAO secureItemDAO;
+    private final Path checkpointFile;
+    private final Path reportFile;
+
+    private int pageSize = 200;
+    private int workers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private long maxBytesPerSecond = 8L * 1024 * 1024;
+    private KeyResolver keys;
+    private Consumer<Progress> listener = p -> {};
+
+    public IntegrityScrubber(SecureItemDAO secureItemDAO, Path checkpointFile, Path reportFile) {
+        this.secureItemDAO = secureItemDAO;
+        this.checkpointFile = checkpointFile;
+        this.reportFile = reportFile;
+    }
+
+    public IntegrityScrubber pageSize(int pageSize) {
+        if (pageSize < 1) throw new IllegalArgumentException("pageSize must be >= 1");
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    public IntegrityScrubber workers(int workers) {
+        if (workers < 1) throw new IllegalArgumentException("workers must be >= 1");
+        this.workers = workers;
+        return this;
+    }
+
+    /** Budget de lecture des blobs, tous workers confondus ; 0 = illimité. */
+    public IntegrityScrubber maxBytesPerSecond(long maxBytesPerSecond) {
+        if (maxBytesPerSecond < 0) throw new IllegalArgumentException("maxBytesPerSecond must be >= 0");
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        return this;
+    }
+
+    /** Active le déchiffrement complet ; voir {@link OperatorKeys}. */
+    public IntegrityScrubber fullDecrypt(KeyResolver keys) {
+        this.keys = keys;
+        return this;
+    }
+
+    /** Appelé après chaque page (depuis le thread du scrub). */
+    public IntegrityScrubber onProgress(Consumer<Progress> listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    public Progress run() throws Exception {
+        Properties cp = loadCheckpoint();
+        int lastId = Integer.parseInt(cp.getProperty("lastId", "0"));
+        long scanned = Long.parseLong(cp.getProperty("scanned", "0"));
+        long verified = Long.parseLong(cp.getProperty("verified", "0"));
+        long structuralOnly = Long.parseLong(cp.getProperty("structuralOnly", "0"));
+        long failed = Long.parseLong(cp.getProperty("failed", "0"));
+        long bytesBefore = Long.parseLong(cp.getProperty("bytesRead", "0"));
+        long elapsedBefore = Long.parseLong(cp.getProperty("elapsedMillis", "0"));
+        if (cp.isEmpty()) startReport();
+
+        IoBudget budget = new IoBudget(maxBytesPerSecond);
+        long start = System.nanoTime();
+        AtomicInteger n = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "integrity-scrub-" + n.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        try {
+            while (true) {
+                List<SecureItem> page = secureItemDAO.listKeysAfter(lastId, pageSize);
+                if (page.isEmpty()) break;
+
+                List<Future<Result>> results = new ArrayList<>(page.size());
+                for (SecureItem item : page) results.add(pool.submit(() -> check(item, budget)));
+
+                List<Result> failures = new ArrayList<>();
+                for (Future<Result> f : results) {
+                    Result r = f.get();
+                    if (r.error != null) failures.add(r);
+                    else if (r.decrypted) verified++;
+                    else structuralOnly++;
+                }
+                appendReport(failures);
+
+                scanned += page.size();
+                failed += failures.size();
+                lastId = page.get(page.size() - 1).getId();
+                long elapsedMillis = elapsedBefore + (System.nanoTime() - start) / 1_000_000;
+                long bytesRead = bytesBefore + budget.consumed.get();
+                saveCheckpoint(lastId, scanned, verified, structuralOnly, failed, bytesRead, elapsedMillis);
+                listener.accept(new Progress(scanned, verified, structuralOnly, failed, bytesRead, lastId, elapsedMillis, false));
+                if (page.size() < pageSize) break;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Files.deleteIfExists(checkpointFile);
+        Progress done = new Progress(scanned, verified, structuralOnly, failed, bytesBefore + budget.consumed.get(), lastId,
+                elapsedBefore + (System.nanoTime() - start) / 1_000_000, true);
+        listener.accept(done);
+        return done;
+    }
+
+    // --- vérification d'un item ---
+
+    private record Result(SecureItem item, boolean decrypted, String stage, String error) {}
+
+    private Result check(SecureItem item, IoBudget budget) {
+        StreamingAesGcm.RangeSource source = (offset, length) -> {
+            // Le budget porte sur ce que le serveur lit, pas seulement sur ce qui revient
+            budget.acquire(secureItemDAO.serverBytesForRange(item.getEncryptedSize(), offset, length));
+            return secureItemDAO.readEncryptedRange(item.getId(), item.getUserId(), offset, length);
+        };
+        try {
+            byte[] head = FileCryptoEnvelope.isSegmented(item.getDekAlg())
+                    ? source.read(0, (int) Math.min(item.getEncryptedSize(), StreamingAesGcm.MAX_HEADER_LEN))
+                    : new byte[0];
+            FileCryptoEnvelope.checkStructure(head, item.getEncryptedSize(), item.getIv(), item.getEncryptedDek(), item.getDekAlg());
+        } catch (Exception e) {
+            return new Result(item, false, "structure", describe(e));
+        }
+
+        if (keys == null) return new Result(item, false, null, null);
+        try {
+            DekWrapper unwrapper = keys.unwrapperFor(item.getUserId(), FileCryptoEnvelope.wrapAlgOf(item.getDekAlg()));
+            if (unwrapper == null) return new Result(item, false, null, null);
+            FileCryptoEnvelope.verify(source, item.getEncryptedSize(), item.getIv(), item.getEncryptedDek(), item.getDekAlg(),
+                    unwrapper, item.getUserId(), item.getItemType());
+            return new Result(item, true, null, null);
+        } catch (Exception e) {
+            return new Result(item, false, "decrypt", describe(e));
+        }
+    }
+
+    private static String describe(Exception e) {
+        String msg = e.getClass().getSimpleName() + (e.getMessage() == null ? "" : ": " + e.getMessage());
+        return msg.replace(';', ',').replace('\n', ' ');
+    }
+
+    /** Débit de lecture partagé : chaque lecture réserve sa part de temps, les suivantes attendent. */
+    private static final class IoBudget {
+        private final long bytesPerSecond;
+        private final AtomicLong consumed = new AtomicLong();
+        private long nextFreeNanos;
+
+        IoBudget(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        void acquire(long bytes) throws InterruptedException {
+            consumed.addAndGet(bytes);
+            if (bytesPerSecond == 0) return;
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                if (nextFreeNanos < now) nextFreeNanos = now;
+                waitNanos = nextFreeNanos - now;
+                nextFreeNanos += bytes * 1_000_000_000L / bytesPerSecond;
+            }
+            if (waitNanos > 0) Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+        }
+    }
+
+    // --- rapport / checkpoint ---
+
+    private void startReport() throws IOException {
+        if (reportFile.getParent() != null) Files.createDirectories(reportFile.getParent());
+        Files.writeString(reportFile, "item_id;user_id;dek_alg;stage;error\n", StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private void appendReport(List<Result> failures) throws IOException {
+        if (failures.isEmpty()) return;
+        try (BufferedWriter w = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (Result r : failures) {
+                w.write(r.item.getId() + ";" + r.item.getUserId() + ";" + r.item.getDekAlg() + ";" + r.stage + ";" + r.error);
+                w.newLine();
+            }
+        }
+    }
+
+    private Properties loadCheckpoint() throws IOException {
+        Properties p = new Properties();
+        if (!Files.exists(checkpointFile)) return p;
+        try (InputStream in = Files.newInputStream(checkpointFile)) {
+            p.load(in);
+        }
+        if (!reportFile.toAbsolutePath().toString().equals(p.getProperty("report"))) {
+            throw new IllegalStateException("Checkpoint " + checkpointFile + " belongs to another report");
+        }
+        return p;
+    }
+
+    private void saveCheckpoint(int lastId, long scanned, long verified, long structuralOnly, long failed,
+                                long bytesRead, long elapsedMillis) throws IOException {
+        Properties p = new Properties();
+        p.setProperty("report", reportFile.toAbsolutePath().toString());
+        p.setProperty("lastId", String.valueOf(lastId));
+        p.setProperty("scanned", String.valueOf(scanned));
+        p.setProperty("verified", String.valueOf(verified));
+        p.setProperty("structuralOnly", String.valueOf(structuralOnly));
+        p.setProperty("failed", String.valueOf(failed));
+        p.setProperty("bytesRead", String.valueOf(bytesRead));
+        p.setProperty("elapsedMillis", String.valueOf(elapsedMillis));
+
+        if (checkpointFile.getParent() != null) Files.createDirectories(checkpointFile.getParent());
+        Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            p.store(out, "Integrity scrub checkpoint");
+        }
+        Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // --- clés opérateur ---
+
+    /**
+     * Clés détenues par l'opérateur qui lance le scrub : les clés privées du répertoire keys/
+     * (voir {@link RsaKeyManager#privateKeyFile}) et, pour les items sous UMK, la KEK dérivée de
+     * users.wrapped_umk. Rien ne passe par les caches de session ; les KEK sont effacées par {@link #close()}.
+     */
+    public static final class OperatorKeys implements KeyResolver, AutoCloseable {
+        private final UserDAO userDAO;
+        private final Map<Integer, Optional<PrivateKey>> privateKeys = new ConcurrentHashMap<>();
+        private final Map<Integer, DekWrapper> keks = new ConcurrentHashMap<>();
+
+        public OperatorKeys(UserDAO userDAO) {
+            this.userDAO = userDAO;
+        }
+
+        @Override
+        public DekWrapper unwrapperFor(int userId, String wrapAlg) throws Exception {
+            PrivateKey sk = privateKey(userId).orElse(null);
+            if (sk == null) return null;
+            if (!FileCryptoEnvelope.DEK_ALG_AES_KW_UMK.equals(wrapAlg)) return DekWrapper.forUserKeys(null, sk);
+
+            DekWrapper kw = keks.get(userId);
+            if (kw == null) {
+                byte[] wrapped = userDAO.getWrappedMasterKey(userId);
+                if (wrapped == null) throw new IllegalStateException("Item under UMK but users.wrapped_umk is empty");
+                byte[] umk = DekWrapper.forUserKeys(null, sk).unwrap(wrapped);
+                byte[] kek = null;
+                try {
+                    kek = KeyDerivation.deriveDekWrappingKey(umk, userId);
+                    kw = DekWrapper.aesKw(FileCryptoEnvelope.DEK_ALG_AES_KW_UMK, kek);
+                } finally {
+                    Arrays.fill(umk, (byte) 0);
+                    if (kek != null) Arrays.fill(kek, (byte) 0);
+                }
+                DekWrapper previous = keks.putIfAbsent(userId, kw);
+                if (previous != null) {
+                    kw.close();
+                    kw = previous;
+                }
+            }
+            return kw;
+        }
+
+        private Optional<PrivateKey> privateKey(int userId) throws Exception {
+            Optional<PrivateKey> sk = privateKeys.get(userId);
+            if (sk != null) return sk;
+            String username = userDAO.findById(userId).map(User::getUsername).orElse(null);
+            sk = username == null || !Files.exists(RsaKeyManager.privateKeyFile(username))
+                    ? Optional.empty() // pas de clé ici : vérification structurelle seulement
+                    : Optional.of(RsaKeyManager.loadPrivateKey(username));
+            privateKeys.putIfAbsent(userId, sk);
+            return sk;
+        }
+
+        @Override
+        public void close() {
+            keks.values().forEach(DekWrapper::close);
+            keks.clear();
+            privateKeys.clear();
+        }
+    }
+}
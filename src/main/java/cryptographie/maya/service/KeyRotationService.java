@@ -0,0 +1,186 @@
+package cryptographie.maya.service;
+
+import cryptographie.maya.crypto.DekWrapper;
+import cryptographie.maya.crypto.FileCryptoEnvelope;
+import cryptographie.maya.crypto.RsaKeyManager;
+import cryptographie.maya.dao.SecureItemDAO;
+import cryptographie.maya.dao.UserDAO;
+import cryptographie.maya.dao.impl.SecureItemDAOImpl;
+import cryptographie.maya.dao.impl.UserDAOImpl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Opérations de masse sur les clés d'un utilisateur, via {@link DekRewrapJob}.
+ *
+ * Une rotation de paire de clés ne touche pas aux items déjà sous UMK : seule users.wrapped_umk est
+ * ré-enveloppée. Les items encore enveloppés directement par la clé publique (RSA-OAEP / ECIES-X25519)
+ * sont d'abord migrés sous l'UMK avec l'ancienne clé privée, sinon ils deviendraient illisibles.
+ */
+public class KeyRotationService {
+
+    private static final Path JOBS_DIR = Paths.get("jobs");
+    private static final Map<Integer, ReadWriteLock> ROTATION_LOCKS = new ConcurrentHashMap<>();
+
+    private final SecureItemDAO secureItemDAO;
+    private final UserDAO userDAO;
+    private final MasterKeyService masterKeys;
+
+    private int maxItemsPerSecond = Integer.getInteger("bluelocker.rewrap.maxItemsPerSecond", 0);
+
+    public KeyRotationService() {
+        this(new SecureItemDAOImpl(), new UserDAOImpl());
+    }
+
+    public KeyRotationService(SecureItemDAO secureItemDAO, UserDAO userDAO) {
+        this(secureItemDAO, userDAO, new MasterKeyService(userDAO));
+    }
+
+    public KeyRotationService(SecureItemDAO secureItemDAO, UserDAO userDAO, MasterKeyService masterKeys) {
+        this.secureItemDAO = secureItemDAO;
+        this.userDAO = userDAO;
+        this.masterKeys = masterKeys;
+    }
+
+    /** Plafond de débit des jobs lancés par ce service ; 0 = illimité. */
+    public KeyRotationService maxItemsPerSecond(int maxItemsPerSecond) {
+        this.maxItemsPerSecond = maxItemsPerSecond;
+        return this;
+    }
+
+    /**
+     * Passe sous l'UMK tous les items encore enveloppés par la clé publique (migration paresseuse
+     * de DriveService faite d'un coup). Reprend au checkpoint si un job précédent a été interrompu.
+     */
+    public DekRewrapJob.Progress migrateToMasterKey(int userId, String username, Consumer<DekRewrapJob.Progress> listener) throws Exception {
+        PrivateKey sk = SecretCache.session().privateKey(username);
+        return migrate(userId, username, sk, listener);
+    }
+
+    /**
+     * Nouvelle paire de clés (type selon -Dbluelocker.userKeyAlg) : migration des items restants,
+     * ré-enveloppe de l'UMK, puis remplacement conditionnel en base et du fichier de clé privée.
+     * Les envois de l'utilisateur sont suspendus pendant toute l'opération ({@link #rotationLock}) :
+     * aucun item ne peut être créé sous l'ancienne clé publique entre la migration et le remplacement.
+     */
+    public DekRewrapJob.Progress rotateUserKeyPair(int userId, String username, Consumer<DekRewrapJob.Progress> listener) throws Exception {
+        Lock rotation = rotationLock(userId).writeLock();
+        rotation.lock(); // attend la fin des envois en cours ; les suivants sont refusés
+        try {
+            return rotate(userId, username, listener);
+        } finally {
+            rotation.unlock();
+        }
+    }
+
+    /**
+     * Verrou par utilisateur : lecture pour un envoi ({@link DriveService}), écriture pour une rotation.
+     * Équitable, pour qu'un flot d'envois n'affame pas une rotation en attente.
+     */
+    static ReadWriteLock rotationLock(int userId) {
+        return ROTATION_LOCKS.computeIfAbsent(userId, id -> new ReentrantReadWriteLock(true));
+    }
+
+    private DekRewrapJob.Progress rotate(int userId, String username, Consumer<DekRewrapJob.Progress> listener) throws Exception {
+        PrivateKey oldSk = SecretCache.session().privateKey(username);
+        DekRewrapJob.Progress migrated = migrate(userId, username, oldSk, listener);
+        // Un conflit = ligne modifiée entre lecture et écriture : une nouvelle passe vérifie qu'elle n'est plus sous l'ancienne clé
+        for (int pass = 1; migrated.failed() == 0 && migrated.conflicts() > 0 && pass < 3; pass++) {
+            migrated = migrate(userId, username, oldSk, listener);
+        }
+        if (migrated.failed() > 0 || migrated.conflicts() > 0) {
+            throw new IllegalStateException((migrated.failed() + migrated.conflicts()) + " item(s) could not be migrated; key pair kept");
+        }
+
+        byte[] wrappedUmk = userDAO.getWrappedMasterKey(userId);
+        if (wrappedUmk == null) throw new IllegalStateException("No master key for user id=" + userId);
+        String oldPublicKey = userDAO.getPublicKeyById(userId);
+
+        // Même type de clé que celui choisi par l'utilisateur à l'inscription
+        KeyPair next = RsaKeyManager.newUserKeyPair(RsaKeyManager.userKeyAlgOf(oldSk));
+        byte[] rewrappedUmk = FileCryptoEnvelope.rewrap(wrappedUmk,
+                DekWrapper.forUserKeys(null, oldSk), DekWrapper.forUserKeys(next.getPublic(), null));
+
+        // Nouvelle clé privée écrite à côté de l'ancienne, mise en place seulement après la mise à jour en base
+        Path keyFile = RsaKeyManager.privateKeyFile(username);
+        Path pending = keyFile.resolveSibling(keyFile.getFileName() + ".new");
+        RsaKeyManager.writePrivateKey(pending, next.getPrivate());
+        boolean committed;
+        try {
+            committed = userDAO.replaceUserKeys(userId, wrappedUmk, RsaKeyManager.publicKeyToBase64(next.getPublic()), rewrappedUmk);
+        } catch (Exception e) {
+            // Erreur après un commit possible (connexion perdue) : c'est la base qui dit si .new est déjà la seule clé valable
+            try {
+                committed = Arrays.equals(rewrappedUmk, userDAO.getWrappedMasterKey(userId));
+            } catch (Exception unknown) {
+                e.addSuppressed(unknown);
+                throw new IllegalStateException("Key rotation outcome unknown for user id=" + userId + "; " + pending
+                        + " kept: install it over " + keyFile.getFileName() + " if users.wrapped_umk was updated", e);
+            }
+            if (!committed) {
+                Files.deleteIfExists(pending);
+                throw e;
+            }
+            System.err.println("Key rotation user id=" + userId + ": update reported " + e + " but was committed");
+        }
+        if (!committed) {
+            Files.deleteIfExists(pending);
+            throw new IllegalStateException("Master key changed concurrently; rotation aborted for user id=" + userId);
+        }
+
+        try {
+            Files.move(pending, keyFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // La base n'est plus lisible qu'avec .new : on la remet sur l'ancienne paire (compare-and-set inverse)
+            boolean restored = false;
+            try {
+                restored = userDAO.replaceUserKeys(userId, rewrappedUmk, oldPublicKey, wrappedUmk);
+            } catch (Exception restoreFailure) {
+                e.addSuppressed(restoreFailure);
+            }
+            if (restored) {
+                Files.deleteIfExists(pending);
+                throw new IllegalStateException("Private key file could not be replaced; rotation rolled back for user id=" + userId, e);
+            }
+            throw new IllegalStateException("Key rotation committed for user id=" + userId + " but " + keyFile
+                    + " could not be replaced: " + pending + " is the only copy of the new private key, move it over "
+                    + keyFile.getFileName() + " by hand", e);
+        }
+
+        PublicKeyCache.shared().invalidate(userId);
+        // Clé privée parsée en cache : partagé et dans chaque session ouverte, sinon une session
+        // re-dérivant sa KEK déballerait la nouvelle wrapped_umk avec l'ancienne clé
+        SecretCache.session().invalidatePrivateKey(username);
+        SessionStore.shared().sessionsOf(userId).forEach(s -> s.secrets().invalidatePrivateKey(s.username()));
+        return migrated;
+    }
+
+    private DekRewrapJob.Progress migrate(int userId, String username, PrivateKey sk, Consumer<DekRewrapJob.Progress> listener) throws Exception {
+        DekWrapper asym = DekWrapper.forUserKeys(null, sk);
+        try (DekWrapper umk = masterKeys.wrapperFor(userId, username, sk)) {
+            DekRewrapJob job = new DekRewrapJob(secureItemDAO, userId,
+                    wrapAlg -> wrapAlg.equals(asym.alg()) ? asym : null, // UMK déjà en place : rien à faire
+                    umk, JOBS_DIR.resolve("rewrap-" + userId + ".properties"))
+                    .maxItemsPerSecond(maxItemsPerSecond);
+            if (listener != null) job.onProgress(listener);
+            DekRewrapJob.Progress progress = job.run();
+            if (progress.failed() > 0) {
+                System.err.println("DEK re-wrap user id=" + userId + ": failed ids " + job.failedIds());
+            }
+            return progress;
+        }
+    }
+}
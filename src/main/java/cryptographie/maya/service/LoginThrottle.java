@@ -0,0 +1,193 @@
+package cryptographie.maya.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limitation des tentatives de connexion, en mémoire, avant toute requête SQL ou vérification Argon2.
+ *
+ * - Un seau à jetons par nom d'utilisateur (insensible à la casse) et, si l'appelant la fournit,
+ *   par source (adresse, poste...). Chaque seau tient dans un seul {@link AtomicLong} (algorithme
+ *   GCRA : « heure théorique d'arrivée » de la prochaine tentative) mis à jour par CAS, sans verrou.
+ * - Un cache court des noms inexistants : les essais répétés sur un compte qui n'existe pas ne
+ *   touchent plus la base pendant {@code missingTtl}.
+ * Les noms sont comparés en minuscules partout (seaux et cache), comme la collation de users.username.
+ * Chaque table est plafonnée à {@code maxKeys} : une fois pleine, une seule passe retire les seaux
+ * pleins puis, s'il le faut, ceux qui se rempliront le plus tôt, jusqu'aux trois quarts ; la
+ * passe suivante n'a lieu qu'après {@code maxKeys / 4} nouvelles clés (coût amorti constant).
+ *
+ * Réglages : {@code -Dbluelocker.login.userBurst} / {@code userPerMinute} (défaut 5 puis 6/min),
+ * {@code -Dbluelocker.login.sourceBurst} / {@code sourcePerMinute} (défaut 20 puis 60/min),
+ * {@code -Dbluelocker.login.missingTtlSeconds} (défaut 30).
+ */
+public final class LoginThrottle {
+
+    private static final int MAX_KEYS = 10_000;
+
+    private static final LoginThrottle SHARED = new LoginThrottle(
+            Integer.getInteger("bluelocker.login.userBurst", 5),
+            Integer.getInteger("bluelocker.login.userPerMinute", 6),
+            Integer.getInteger("bluelocker.login.sourceBurst", 20),
+            Integer.getInteger("bluelocker.login.sourcePerMinute", 60),
+            Long.getLong("bluelocker.login.missingTtlSeconds", 30) * 1_000_000_000L,
+            MAX_KEYS);
+
+    /** Motif du refus : le seau de l'utilisateur ou celui de la source est vide. */
+    public enum Verdict { ALLOWED, USER_LIMITED, SOURCE_LIMITED }
+
+    /** Compteurs cumulés ; {@code trackedKeys} et {@code cachedMissing} sont des tailles instantanées. */
+    public record Stats(long allowed, long rejectedByUser, long rejectedBySource, long missingHits,
+                        int trackedKeys, int cachedMissing) {
+        @Override
+        public String toString() {
+            return String.format("%d allowed, %d rejected (user), %d rejected (source), %d missing-user hits; %d buckets, %d cached missing",
+                    allowed, rejectedByUser, rejectedBySource, missingHits, trackedKeys, cachedMissing);
+        }
+    }
+
+    private final Bucket users;
+    private final Bucket sources;
+    private final long missingTtlNanos;
+    private final int maxKeys;
+    private final Map<String, Long> missing = new ConcurrentHashMap<>();
+
+    private final AtomicLong allowed = new AtomicLong();
+    private final AtomicLong rejectedByUser = new AtomicLong();
+    private final AtomicLong rejectedBySource = new AtomicLong();
+    private final AtomicLong missingHits = new AtomicLong();
+
+    public LoginThrottle(int userBurst, int userPerMinute, int sourceBurst, int sourcePerMinute,
+                         long missingTtlNanos, int maxKeys) {
+        this.users = new Bucket(userBurst, userPerMinute);
+        this.sources = new Bucket(sourceBurst, sourcePerMinute);
+        this.missingTtlNanos = missingTtlNanos;
+        this.maxKeys = maxKeys;
+    }
+
+    public static LoginThrottle shared() {
+        return SHARED;
+    }
+
+    /** Consomme un jeton de la source ({@code null} : aucune) puis de l'utilisateur. */
+    public Verdict tryAcquire(String username, String source) {
+        long now = System.nanoTime();
+        if (source != null && !sources.tryAcquire(source, now, maxKeys)) {
+            rejectedBySource.incrementAndGet();
+            return Verdict.SOURCE_LIMITED;
+        }
+        if (!users.tryAcquire(normalize(username), now, maxKeys)) {
+            rejectedByUser.incrementAndGet();
+            return Verdict.USER_LIMITED;
+        }
+        allowed.incrementAndGet();
+        return Verdict.ALLOWED;
+    }
+
+    /** Connexion réussie : l'utilisateur retrouve un seau plein. */
+    public void succeeded(String username) {
+        users.reset(normalize(username));
+    }
+
+    /** Vrai si {@code username} a été signalé inexistant il y a moins de {@code missingTtl}. */
+    public boolean isKnownMissing(String username) {
+        String key = normalize(username);
+        Long expires = missing.get(key);
+        if (expires == null) return false;
+        if (System.nanoTime() - expires >= 0) {
+            missing.remove(key, expires);
+            return false;
+        }
+        missingHits.incrementAndGet();
+        return true;
+    }
+
+    public void markMissing(String username) {
+        long now = System.nanoTime();
+        if (missing.size() >= maxKeys) {
+            missing.values().removeIf(expires -> now - expires >= 0);
+            if (missing.size() >= maxKeys) missing.clear();
+        }
+        missing.put(normalize(username), now + missingTtlNanos);
+    }
+
+    /** À appeler après la création d'un compte, pour qu'il puisse se connecter aussitôt. */
+    public void forgetMissing(String username) {
+        missing.remove(normalize(username));
+    }
+
+    private static String normalize(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    public Stats stats() {
+        return new Stats(allowed.get(), rejectedByUser.get(), rejectedBySource.get(), missingHits.get(),
+                users.size() + sources.size(), missing.size());
+    }
+
+    /**
+     * Seaux à jetons par clé en GCRA : {@code burst} tentatives immédiates, puis une toutes les
+     * {@code 60 s / perMinute}. L'état d'une clé est l'instant (nanoTime) où son seau sera de
+     * nouveau plein ; une tentative passe si cet instant est à moins de {@code tolerance} dans le futur.
+     */
+    private static final class Bucket {
+        private final long interval;
+        private final long tolerance;
+        private final ConcurrentHashMap<String, AtomicLong> tats = new ConcurrentHashMap<>();
+        private final ReentrantLock shrinking = new ReentrantLock();
+
+        Bucket(int burst, int perMinute) {
+            if (burst < 1 || perMinute < 1) throw new IllegalArgumentException("burst and rate must be >= 1");
+            this.interval = 60_000_000_000L / perMinute;
+            this.tolerance = interval * (burst - 1);
+        }
+
+        boolean tryAcquire(String key, long now, int maxKeys) {
+            AtomicLong tat = tats.get(key);
+            if (tat == null) {
+                // Un seul thread élague ; les autres ne l'attendent pas (dépassement borné par les tentatives en cours)
+                if (tats.size() >= maxKeys && shrinking.tryLock()) {
+                    try {
+                        if (tats.size() >= maxKeys) shrink(now, maxKeys);
+                    } finally {
+                        shrinking.unlock();
+                    }
+                }
+                tat = tats.computeIfAbsent(key, k -> new AtomicLong(now));
+            }
+            while (true) {
+                long cur = tat.get();
+                if (now - (cur - tolerance) < 0) return false;
+                long next = (cur - now > 0 ? cur : now) + interval;
+                if (tat.compareAndSet(cur, next)) return true;
+            }
+        }
+
+        void reset(String key) {
+            tats.remove(key);
+        }
+
+        int size() {
+            return tats.size();
+        }
+
+        /**
+         * Retire les seaux redevenus pleins (les recréer à la prochaine tentative revient au même),
+         * puis, au-delà des trois quarts de {@code maxKeys}, ceux qui se rempliront le plus tôt :
+         * les plus proches de l'état neuf, dont l'oubli avantage le moins un attaquant.
+         */
+        private void shrink(long now, int maxKeys) {
+            tats.values().removeIf(tat -> now - tat.get() >= 0);
+            int excess = tats.size() - (maxKeys - maxKeys / 4);
+            if (excess <= 0) return;
+            List<Map.Entry<String, Long>> byRefill = new ArrayList<>(tats.size());
+            tats.forEach((k, tat) -> byRefill.add(Map.entry(k, tat.get() - now)));
+            byRefill.sort(Map.Entry.comparingByValue());
+            for (int i = 0; i < excess && i < byRefill.size(); i++) tats.remove(byRefill.get(i).getKey());
+        }
+    }
+}
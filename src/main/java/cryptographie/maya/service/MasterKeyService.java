@@ -0,0 +1,145 @@
+package cryptographie.maya.service;
+
+import cryptographie.maya.crypto.CryptoAesGcm;
+import cryptographie.maya.crypto.DekWrapper;
+import cryptographie.maya.crypto.FileCryptoEnvelope;
+import cryptographie.maya.crypto.KeyDerivation;
+import cryptographie.maya.dao.UserDAO;
+import cryptographie.maya.dao.impl.UserDAOImpl;
+import cryptographie.maya.model.User;
+
+import java.security.PrivateKey;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Clé maître par utilisateur (UMK) : 32 octets aléatoires, enveloppés une seule fois par la clé publique
+ * de l'utilisateur, RSA-OAEP ou ECIES-X25519 (users.wrapped_umk), et déballés une fois par session.
+ * Les DEK des items sont ensuite enveloppées en AES-KW sous une KEK dérivée de l'UMK (HKDF) : plus aucune opération asymétrique par item.
+ *
+ * Seule la KEK dérivée est gardée en mémoire, une par utilisateur quel que soit son nombre de sessions ;
+ * elle est effacée à la fermeture de sa dernière session ({@link #clearSessionKeys(int)}) ou par
+ * {@link #clearSessionKeys()}. L'exemplaire du registre ne sort jamais de la table : il n'est copié
+ * et effacé que sous le verrou de son entrée, si bien qu'une copie est soit la vraie KEK, soit
+ * absente (on re-dérive). Chaque wrapper rendu travaille sur sa propre copie ({@link DekWrapper#aesKw}) :
+ * un envoi ou un job en cours n'est pas affecté par l'effacement, l'appelant ferme son wrapper quand il a fini.
+ */
+public class MasterKeyService {
+
+    private static final Map<Integer, byte[]> SESSION_KEKS = new ConcurrentHashMap<>();
+
+    private final UserDAO userDAO;
+    private final PublicKeyCache publicKeys;
+
+    public MasterKeyService() {
+        this(new UserDAOImpl());
+    }
+
+    public MasterKeyService(UserDAO userDAO) {
+        this(userDAO, PublicKeyCache.shared());
+    }
+
+    public MasterKeyService(UserDAO userDAO, PublicKeyCache publicKeys) {
+        this.userDAO = userDAO;
+        this.publicKeys = publicKeys;
+    }
+
+    /**
+     * Wrapper AES-KW de l'utilisateur, à fermer après usage. Crée l'UMK si elle n'existe pas encore ;
+     * sinon la clé privée (keys/&lt;username&gt;.pk8) est chargée une fois pour la déballer.
+     * {@code username} peut être null.
+     */
+    public DekWrapper wrapperFor(int userId, String username) throws Exception {
+        return wrapperFor(userId, username, null);
+    }
+
+    /** Variante pour un appelant qui a déjà la clé privée en main (évite un second chargement). */
+    public DekWrapper wrapperFor(int userId, String username, PrivateKey privateKey) throws Exception {
+        return wrapperFor(userId, username, privateKey, SecretCache.session());
+    }
+
+    /** Wrapper de l'utilisateur de {@code session} ; la clé privée éventuelle passe par le cache de la session. */
+    public DekWrapper wrapperFor(Session session) throws Exception {
+        return wrapperFor(session.userId(), session.username(), null, session.secrets());
+    }
+
+    private DekWrapper wrapperFor(int userId, String username, PrivateKey privateKey, SecretCache secrets) throws Exception {
+        byte[] kek = copyOf(userId);
+        if (kek == null) kek = loadOrCreate(userId, username, privateKey, secrets);
+        try {
+            return DekWrapper.aesKw(FileCryptoEnvelope.DEK_ALG_AES_KW_UMK, kek);
+        } finally {
+            Arrays.fill(kek, (byte) 0);
+        }
+    }
+
+    /** Copie de la KEK en mémoire, prise sous le verrou de l'entrée (jamais pendant son effacement) ; null si absente. */
+    private static byte[] copyOf(int userId) {
+        byte[][] copy = new byte[1][];
+        SESSION_KEKS.computeIfPresent(userId, (id, kek) -> {
+            copy[0] = kek.clone();
+            return kek;
+        });
+        return copy[0];
+    }
+
+    /**
+     * Enveloppe par la seule clé publique (en cache), RSA-OAEP ou ECIES-X25519 selon le type de clé
+     * de l'utilisateur, quand l'UMK ne peut pas être déballée ici.
+     */
+    public DekWrapper publicKeyWrapperFor(int userId) throws Exception {
+        return DekWrapper.forUserKeys(publicKeys.get(userId), null);
+    }
+
+    /** Efface toutes les KEK en mémoire. */
+    public static void clearSessionKeys() {
+        SESSION_KEKS.keySet().forEach(MasterKeyService::clearSessionKeys);
+    }
+
+    /** Efface la KEK d'un utilisateur (fermeture de sa dernière session, voir {@link SessionStore}). */
+    public static void clearSessionKeys(int userId) {
+        SESSION_KEKS.computeIfPresent(userId, (id, kek) -> {
+            Arrays.fill(kek, (byte) 0);
+            return null;
+        });
+    }
+
+    /** Dérive la KEK et l'enregistre ; rend une copie propre à l'appelant. */
+    private byte[] loadOrCreate(int userId, String username, PrivateKey privateKey, SecretCache secrets) throws Exception {
+        byte[] umk = null;
+        try {
+            byte[] wrapped = userDAO.getWrappedMasterKey(userId);
+            if (wrapped == null) {
+                umk = CryptoAesGcm.newDek();
+                if (!userDAO.setWrappedMasterKeyIfAbsent(userId, DekWrapper.forUserKeys(publicKeys.get(userId), null).wrap(umk))) {
+                    // Une autre session l'a créée entre-temps : on reprend la sienne
+                    Arrays.fill(umk, (byte) 0);
+                    umk = null;
+                    wrapped = userDAO.getWrappedMasterKey(userId);
+                }
+            }
+            if (umk == null) {
+                PrivateKey sk = privateKey != null ? privateKey : secrets.privateKey(resolveUsername(userId, username));
+                umk = DekWrapper.forUserKeys(null, sk).unwrap(wrapped);
+            }
+
+            byte[] kek = KeyDerivation.deriveDekWrappingKey(umk, userId);
+            SESSION_KEKS.compute(userId, (id, current) -> {
+                if (current == null) return kek.clone();
+                // Une autre session l'a enregistrée entre-temps : on garde la sienne
+                System.arraycopy(current, 0, kek, 0, kek.length);
+                return current;
+            });
+            return kek;
+        } finally {
+            if (umk != null) Arrays.fill(umk, (byte) 0);
+        }
+    }
+
+    private String resolveUsername(int userId, String username) throws Exception {
+        if (username != null && !username.isBlank()) return username;
+        return userDAO.findById(userId).map(User::getUsername)
+                .orElseThrow(() -> new IllegalStateException("User not found: id=" + userId));
+    }
+}
@@ -0,0 +1,147 @@
+package cryptographie.maya.service;
+
+import cryptographie.maya.dao.UserDAO;
+import cryptographie.maya.dao.impl.UserDAOImpl;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Migration BCrypt -> Argon2id des mots de passe, au fil des connexions.
+ *
+ * Après une vérification BCrypt réussie, {@link AuthService} confie le mot de passe (copie) à ce
+ * service et répond tout de suite : le rehash et l'UPDATE se font sur un unique thread de fond.
+ * - La file est bornée : si elle est pleine, la demande est abandonnée (comptée) et le compte
+ *   sera migré à une connexion suivante.
+ * - Le hash Argon2 n'est calculé que lorsque {@link PasswordVerifier} n'a aucune vérification en
+ *   attente ({@link PasswordVerifier#hashIfIdle}) ; sinon le thread patiente, les logins passent avant.
+ * - L'UPDATE est conditionnel (hash inchangé) : un changement de mot de passe concurrent gagne.
+ * Les hashes Argon2 dont les paramètres ne suivent plus la {@link PasswordPolicy} prennent le
+ * même chemin ; {@link Stats#legacyRemaining()} ne compte que les hashes BCrypt.
+ *
+ * Réglage : {@code -Dbluelocker.passwordMigration.queue} (défaut 32).
+ */
+public final class PasswordMigrator implements AutoCloseable {
+
+    private static final long IDLE_BACKOFF_MILLIS = 50;
+
+    private static volatile PasswordMigrator shared;
+
+    /** Compteurs cumulés ; {@code legacyRemaining} vaut -1 si la base n'a pas pu être interrogée. */
+    public record Stats(long migrated, long conflicts, long dropped, long failed, long deferred, int queued,
+                        long legacyRemaining) {
+        @Override
+        public String toString() {
+            return String.format("%d migrated, %d conflicts, %d dropped, %d failed, %d deferred, %d queued; %s legacy hashes remaining",
+                    migrated, conflicts, dropped, failed, deferred, queued, legacyRemaining < 0 ? "?" : legacyRemaining);
+        }
+    }
+
+    private final UserDAO userDAO;
+    private final PasswordVerifier verifier;
+    private final ThreadPoolExecutor worker;
+    // Un compte au plus en file : des connexions répétées ne le rehashent pas plusieurs fois
+    private final Set<Integer> pending = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong migrated = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong deferred = new AtomicLong();
+
+    public PasswordMigrator(UserDAO userDAO, PasswordVerifier verifier, int queueCapacity) {
+        this.userDAO = userDAO;
+        this.verifier = verifier;
+        this.worker = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+                    Thread t = new Thread(r, "password-migration");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /** Créé au premier usage, après {@link PasswordVerifier#shared()} dont il partage le pool. */
+    public static PasswordMigrator shared() {
+        PasswordMigrator m = shared;
+        if (m == null) {
+            synchronized (PasswordMigrator.class) {
+                m = shared;
+                if (m == null) {
+                    shared = m = new PasswordMigrator(new UserDAOImpl(), PasswordVerifier.shared(),
+                            Integer.getInteger("bluelocker.passwordMigration.queue", 32));
+                }
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Planifie le rehash de {@code password} pour {@code userId}, à condition que son hash vaille
+     * encore {@code legacyHash} au moment de l'écriture. Ne bloque jamais ; le tableau est copié,
+     * l'appelant reste libre de l'effacer dès le retour.
+     */
+    public void submit(int userId, String legacyHash, char[] password) {
+        if (!pending.add(userId)) return;
+        char[] copy = password.clone();
+        try {
+            worker.execute(() -> {
+                try {
+                    migrate(userId, legacyHash, copy);
+                } finally {
+                    Arrays.fill(copy, '\0');
+                    pending.remove(userId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Arrays.fill(copy, '\0');
+            pending.remove(userId);
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void migrate(int userId, String legacyHash, char[] password) {
+        try {
+            String newHash;
+            while ((newHash = verifier.hashIfIdle(password)) == null) {
+                deferred.incrementAndGet();
+                Thread.sleep(IDLE_BACKOFF_MILLIS);
+            }
+            if (userDAO.updatePasswordHash(userId, legacyHash, newHash)) {
+                migrated.incrementAndGet();
+            } else {
+                conflicts.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed.incrementAndGet();
+        } catch (Exception e) {
+            // le compte garde son hash BCrypt : nouvelle tentative à la prochaine connexion
+            failed.incrementAndGet();
+            System.err.println("Migration du mot de passe impossible pour l'utilisateur " + userId + " : " + e.getMessage());
+        }
+    }
+
+    /** Compteurs du service et nombre de hashes BCrypt restant en base (une requête COUNT). */
+    public Stats stats() {
+        long remaining;
+        try {
+            remaining = userDAO.countLegacyPasswordHashes();
+        } catch (Exception e) {
+            remaining = -1;
+        }
+        return new Stats(migrated.get(), conflicts.get(), dropped.get(), failed.get(), deferred.get(),
+                worker.getQueue().size(), remaining);
+    }
+
+    @Override
+    public void close() {
+        worker.shutdownNow();
+    }
+}
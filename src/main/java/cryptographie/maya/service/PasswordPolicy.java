@@ -0,0 +1,101 @@
+package cryptographie.maya.service;
+
+import de.mkammerer.argon2.Argon2;
+import de.mkammerer.argon2.Argon2Factory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Paramètres Argon2id des mots de passe : une seule source pour l'inscription, l'outil
+ * {@code AdminCreator}, la migration et le dimensionnement de {@link PasswordVerifier}.
+ *
+ * Ordre de lecture (le premier trouvé l'emporte, clé par clé) :
+ * 1. propriétés système {@code -Dbluelocker.argon2.iterations / memoryKiB / parallelism} ;
+ * 2. fichier désigné par {@code -Dbluelocker.passwordPolicy=<chemin>} (produit par
+ *    {@code CalibrateArgon2}) ;
+ * 3. {@code password.properties} du classpath ;
+ * 4. {@link #DEFAULT} (t=3, m=64 Mio, p=1).
+ * Le budget mémoire de {@link PasswordVerifier} suit le même ordre ({@link #memoryBudgetKiB()}) :
+ * un fichier de {@code CalibrateArgon2} porte les deux, pour qu'ils restent cohérents.
+ *
+ * Les hashes existants restent vérifiables quel que soit leur coût (les paramètres sont dans
+ * le hash) ; ceux qui diffèrent de la politique sont réécrits à la connexion suivante
+ * ({@link #needsRehash}, {@link PasswordMigrator}).
+ */
+public record PasswordPolicy(int iterations, int memoryKiB, int parallelism) {
+
+    public static final PasswordPolicy DEFAULT = new PasswordPolicy(3, 65536, 1);
+
+    private static final Argon2 ARGON2 = Argon2Factory.create(Argon2Factory.Argon2Types.ARGON2id);
+    private static final int DEFAULT_MEMORY_BUDGET_MIB = 512;
+    private static final Properties PROPERTIES = loadProperties();
+    private static final PasswordPolicy CURRENT = new PasswordPolicy(
+            Integer.getInteger("bluelocker.argon2.iterations", intProperty("argon2.iterations", DEFAULT.iterations)),
+            Integer.getInteger("bluelocker.argon2.memoryKiB", intProperty("argon2.memoryKiB", DEFAULT.memoryKiB)),
+            Integer.getInteger("bluelocker.argon2.parallelism", intProperty("argon2.parallelism", DEFAULT.parallelism)));
+
+    public PasswordPolicy {
+        if (iterations < 1 || parallelism < 1) throw new IllegalArgumentException("iterations and parallelism must be >= 1");
+        if (memoryKiB < 8 * parallelism) throw new IllegalArgumentException("Argon2 needs at least 8 KiB per lane");
+    }
+
+    /** Politique du processus, lue une fois au premier usage. */
+    public static PasswordPolicy current() {
+        return CURRENT;
+    }
+
+    /**
+     * Mémoire que {@link PasswordVerifier#shared()} peut consacrer aux vérifications simultanées :
+     * {@code -Dbluelocker.argon2.memoryBudgetMiB}, puis {@code argon2.memoryBudgetMiB} des fichiers, 512 Mio par défaut.
+     */
+    public static long memoryBudgetKiB() {
+        return Long.getLong("bluelocker.argon2.memoryBudgetMiB", intProperty("argon2.memoryBudgetMiB", DEFAULT_MEMORY_BUDGET_MIB)) * 1024;
+    }
+
+    /** Hash Argon2id encodé ({@code $argon2id$v=19$m=..,t=..,p=..$sel$hash}) ; le tableau n'est pas effacé. */
+    public String hash(char[] password) {
+        return ARGON2.hash(iterations, memoryKiB, parallelism, password);
+    }
+
+    /** Vrai pour un hash BCrypt, ou Argon2 calculé avec d'autres paramètres que cette politique. */
+    public boolean needsRehash(String storedHash) {
+        if (storedHash.startsWith("$2")) return true;
+        return storedHash.startsWith("$argon2") && ARGON2.needsRehash(storedHash, iterations, memoryKiB, parallelism);
+    }
+
+    /** Contenu d'un fichier lisible par {@code -Dbluelocker.passwordPolicy}. */
+    public String toProperties() {
+        return "argon2.iterations=" + iterations + System.lineSeparator()
+                + "argon2.memoryKiB=" + memoryKiB + System.lineSeparator()
+                + "argon2.parallelism=" + parallelism + System.lineSeparator();
+    }
+
+    private static Properties loadProperties() {
+        Properties props = new Properties();
+        try (InputStream in = PasswordPolicy.class.getClassLoader().getResourceAsStream("password.properties")) {
+            if (in != null) props.load(in);
+        } catch (IOException e) {
+            throw new IllegalStateException("password.properties illisible", e);
+        }
+        String file = System.getProperty("bluelocker.passwordPolicy");
+        if (file != null) {
+            try (Reader in = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+                props.load(in);
+            } catch (IOException e) {
+                throw new IllegalStateException("Politique de mot de passe illisible: " + file, e);
+            }
+        }
+        return props;
+    }
+
+    private static int intProperty(String key, int fallback) {
+        String v = PROPERTIES.getProperty(key);
+        return v == null ? fallback : Integer.parseInt(v.trim());
+    }
+}
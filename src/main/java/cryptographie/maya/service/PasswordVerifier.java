@@ -0,0 +1,217 @@
+package cryptographie.maya.service;
+
+import de.mkammerer.argon2.Argon2;
+import de.mkammerer.argon2.Argon2Factory;
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Vérification des mots de passe (Argon2id, BCrypt historique) sur un pool partagé.
+ *
+ * Une vérification Argon2 alloue {@code m} Kio de mémoire native (64 Mio avec la
+ * {@link PasswordPolicy} par défaut) : sans limite, 50 connexions simultanées demandent ~3,2 Go. Ici :
+ * - le nombre de workers est fixé par le budget mémoire ({@code budget / m de la politique},
+ *   borné au nombre de cœurs) ;
+ * - chaque vérification réserve sa mémoire réelle (lue dans le hash) sur un sémaphore du
+ *   budget, ce qui couvre aussi les hashes plus coûteux que la politique ;
+ * - la file d'attente est bornée : au-delà, le refus est immédiat ({@link Overloaded}), tout
+ *   comme une attente qui dépasse le délai maximal.
+ * Une rafale de connexions dégrade donc la latence puis refuse proprement, sans épuiser l'hôte.
+ *
+ * Réglages : {@code -Dbluelocker.argon2.memoryBudgetMiB} ou {@code argon2.memoryBudgetMiB} de la
+ * politique (défaut 512, voir {@link PasswordPolicy#memoryBudgetKiB()}),
+ * {@code -Dbluelocker.argon2.queue} (défaut 8 par worker), {@code -Dbluelocker.argon2.maxWaitMillis} (défaut 10000).
+ */
+public final class PasswordVerifier implements AutoCloseable {
+
+    private static volatile PasswordVerifier shared;
+
+    /** Refus de vérifier : file pleine ou attente trop longue. Le mot de passe n'a pas été testé. */
+    public static final class Overloaded extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public Overloaded(String message) {
+            super(message);
+        }
+    }
+
+    /** Compteurs cumulés ; les durées sont en millisecondes. */
+    public record Stats(int workers, long memoryBudgetKiB, long completed, long rejected, long timedOut, int queued,
+                        double avgQueueMillis, double maxQueueMillis, double avgVerifyMillis, double maxVerifyMillis) {
+        @Override
+        public String toString() {
+            return String.format("%d verified, %d rejected, %d timed out, %d queued; queue avg %.1f ms (max %.1f), verify avg %.1f ms (max %.1f), %d workers / %d MiB",
+                    completed, rejected, timedOut, queued, avgQueueMillis, maxQueueMillis, avgVerifyMillis, maxVerifyMillis,
+                    workers, memoryBudgetKiB / 1024);
+        }
+    }
+
+    private final Argon2 argon2 = Argon2Factory.create(Argon2Factory.Argon2Types.ARGON2id);
+    private final PasswordPolicy policy;
+    private final long memoryBudgetKiB;
+    private final int workers;
+    private final long maxWaitMillis;
+    private final Semaphore memory;
+    private final ThreadPoolExecutor pool;
+
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong queueNanos = new AtomicLong();
+    private final AtomicLong maxQueueNanos = new AtomicLong();
+    private final AtomicLong verifyNanos = new AtomicLong();
+    private final AtomicLong maxVerifyNanos = new AtomicLong();
+
+    /** {@code queueCapacity < 0} : 8 places par worker. */
+    public PasswordVerifier(long memoryBudgetKiB, int queueCapacity, long maxWaitMillis) {
+        this(memoryBudgetKiB, queueCapacity, maxWaitMillis, PasswordPolicy.current());
+    }
+
+    public PasswordVerifier(long memoryBudgetKiB, int queueCapacity, long maxWaitMillis, PasswordPolicy policy) {
+        if (memoryBudgetKiB < policy.memoryKiB()) {
+            throw new IllegalArgumentException("Argon2 memory budget (" + memoryBudgetKiB / 1024 + " MiB) is below one verification at the policy's m="
+                    + policy.memoryKiB() + " KiB: raise bluelocker.argon2.memoryBudgetMiB / argon2.memoryBudgetMiB or lower argon2.memoryKiB");
+        }
+        this.policy = policy;
+        this.memoryBudgetKiB = memoryBudgetKiB;
+        this.workers = (int) Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), memoryBudgetKiB / policy.memoryKiB()));
+        this.maxWaitMillis = maxWaitMillis;
+        // Permits en Mio : un sémaphore int suffit pour n'importe quel budget raisonnable
+        this.memory = new Semaphore((int) (memoryBudgetKiB / 1024), true);
+
+        AtomicInteger n = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity < 0 ? workers * 8 : Math.max(1, queueCapacity)), r -> {
+                    Thread t = new Thread(r, "password-verify-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Pool du processus, créé au premier usage. Une politique incompatible avec le budget échoue ici
+     * avec un message explicite (et à chaque appel suivant), pas en erreur d'initialisation de classe.
+     */
+    public static PasswordVerifier shared() {
+        PasswordVerifier v = shared;
+        if (v == null) {
+            synchronized (PasswordVerifier.class) {
+                v = shared;
+                if (v == null) {
+                    try {
+                        shared = v = new PasswordVerifier(
+                                PasswordPolicy.memoryBudgetKiB(),
+                                Integer.getInteger("bluelocker.argon2.queue", -1),
+                                Long.getLong("bluelocker.argon2.maxWaitMillis", 10_000));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalStateException("Password verification unavailable: " + e.getMessage(), e);
+                    }
+                }
+            }
+        }
+        return v;
+    }
+
+    /**
+     * Vérifie {@code password} contre {@code storedHash} (Argon2 {@code $argon2...} ou BCrypt
+     * {@code $2...}). Bloque jusqu'au résultat ; {@link Overloaded} si la demande est refusée.
+     * Le tableau doit rester intact jusqu'au retour (l'appelant l'efface ensuite).
+     */
+    public boolean verify(String storedHash, char[] password) throws Overloaded, InterruptedException {
+        if (storedHash == null) throw new IllegalArgumentException("stored hash is required");
+        boolean isArgon2 = storedHash.startsWith("$argon2");
+        if (!isArgon2 && !storedHash.startsWith("$2")) throw new IllegalArgumentException("Unsupported hash format");
+        int memoryMiB = isArgon2 ? (int) (Math.min(memoryBudgetKiB, argon2MemoryKiB(storedHash, policy.memoryKiB())) / 1024) : 0;
+
+        long submitted = System.nanoTime();
+        Future<Boolean> result;
+        try {
+            result = pool.submit(() -> {
+                started.incrementAndGet();
+                record(queueNanos, maxQueueNanos, System.nanoTime() - submitted);
+                if (memoryMiB > 0) memory.acquire(memoryMiB);
+                long start = System.nanoTime();
+                try {
+                    return isArgon2 ? argon2.verify(storedHash, password)
+                            : BCrypt.checkpw(new String(password), storedHash);
+                } finally {
+                    record(verifyNanos, maxVerifyNanos, System.nanoTime() - start);
+                    if (memoryMiB > 0) memory.release(memoryMiB);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw new Overloaded("Password verification queue full");
+        }
+
+        try {
+            boolean ok = result.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+            completed.incrementAndGet();
+            return ok;
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            timedOut.incrementAndGet();
+            throw new Overloaded("Password verification timed out after " + maxWaitMillis + " ms");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Password verification failed", e.getCause());
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            throw e;
+        }
+    }
+
+    /**
+     * Hash Argon2id selon la {@link PasswordPolicy}, calculé dans le thread appelant, seulement si
+     * aucune vérification n'attend (file du pool et sémaphore mémoire vides) ; null sinon.
+     * Réservé aux tâches de fond ({@link PasswordMigrator}) : elles ne passent jamais devant un login.
+     */
+    String hashIfIdle(char[] password) {
+        int memoryMiB = Math.max(1, policy.memoryKiB() / 1024);
+        if (!pool.getQueue().isEmpty() || memory.hasQueuedThreads() || !memory.tryAcquire(memoryMiB)) return null;
+        try {
+            return policy.hash(password);
+        } finally {
+            memory.release(memoryMiB);
+        }
+    }
+
+    /** Paramètre {@code m} (Kio) d'un hash encodé {@code $argon2id$v=19$m=65536,t=3,p=1$...}. */
+    static long argon2MemoryKiB(String encoded, int fallback) {
+        int i = encoded.indexOf("m=");
+        if (i < 0) return fallback;
+        long m = 0;
+        for (int j = i + 2; j < encoded.length() && Character.isDigit(encoded.charAt(j)); j++) {
+            m = m * 10 + (encoded.charAt(j) - '0');
+            if (m > Integer.MAX_VALUE) break;
+        }
+        return m > 0 ? m : fallback;
+    }
+
+    public Stats stats() {
+        long done = Math.max(1, started.get());
+        return new Stats(workers, memoryBudgetKiB, completed.get(), rejected.get(), timedOut.get(), pool.getQueue().size(),
+                queueNanos.get() / 1e6 / done, maxQueueNanos.get() / 1e6,
+                verifyNanos.get() / 1e6 / done, maxVerifyNanos.get() / 1e6);
+    }
+
+    private static void record(AtomicLong total, AtomicLong max, long nanos) {
+        total.addAndGet(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,136 @@
+package cryptographie.maya.service;
+
+import cryptographie.maya.crypto.RsaKeyManager;
+import cryptographie.maya.dao.UserDAO;
+import cryptographie.maya.dao.impl.UserDAOImpl;
+
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache partagé userId -> clé publique RSA déjà parsée (read-through, LRU borné).
+ * Les clés publiques ne changent quasiment jamais : on évite un SELECT + Base64 + KeyFactory par upload.
+ * À invalider quand l'utilisateur est supprimé ou change de paire de clés. Un chargement commencé
+ * avant l'invalidation n'est pas remis en cache (génération par utilisateur) : sinon un miss qui a lu
+ * l'ancienne clé juste avant la rotation la servirait indéfiniment.
+ */
+public final class PublicKeyCache {
+
+    private static final PublicKeyCache SHARED = new PublicKeyCache(new UserDAOImpl(), 1024);
+
+    public record Stats(long hits, long misses, int size) {}
+
+    private final UserDAO userDAO;
+    private final int maxEntries;
+    private final LinkedHashMap<Integer, PublicKey> keys;
+    // Sous le verrou de keys : génération (compteur croissant) de la dernière invalidation par
+    // utilisateur, et celle du dernier clear(), qui vaut pour tous
+    private final Map<Integer, Long> generations = new HashMap<>();
+    private long lastGeneration;
+    private long clearedAt;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public PublicKeyCache(UserDAO userDAO, int maxEntries) {
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be >= 1");
+        this.userDAO = userDAO;
+        this.maxEntries = maxEntries;
+        this.keys = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, PublicKey> eldest) {
+                return size() > PublicKeyCache.this.maxEntries;
+            }
+        };
+    }
+
+    public static PublicKeyCache shared() {
+        return SHARED;
+    }
+
+    public PublicKey get(int userId) throws Exception {
+        long generation;
+        synchronized (keys) {
+            PublicKey pk = keys.get(userId);
+            if (pk != null) {
+                hits.incrementAndGet();
+                return pk;
+            }
+            generation = generationOf(userId);
+        }
+        misses.incrementAndGet();
+
+        // Chargement hors verrou : deux misses simultanés sur le même id parsent deux fois, sans gravité ;
+        // une invalidation pendant le chargement, elle, empêche la mise en cache (clé peut-être retirée)
+        String publicKeyB64 = userDAO.getPublicKeyById(userId);
+        if (publicKeyB64 == null || publicKeyB64.isBlank()) {
+            throw new IllegalStateException("Public key not found for userId=" + userId);
+        }
+        PublicKey pk = RsaKeyManager.publicKeyFromBase64(publicKeyB64);
+        synchronized (keys) {
+            if (generationOf(userId) == generation) keys.put(userId, pk);
+        }
+        return pk;
+    }
+
+    /** Précharge en une seule requête les clés absentes du cache (imports en lot). */
+    public void prefetch(Collection<Integer> userIds) throws Exception {
+        List<Integer> missing = new ArrayList<>();
+        Map<Integer, Long> loadedAt = new HashMap<>();
+        synchronized (keys) {
+            for (Integer id : userIds) {
+                if (id != null && !keys.containsKey(id)) {
+                    missing.add(id);
+                    loadedAt.put(id, generationOf(id));
+                }
+            }
+        }
+        if (missing.isEmpty()) return;
+
+        Map<Integer, String> loaded = userDAO.getPublicKeysByIds(missing);
+        Map<Integer, PublicKey> parsed = new LinkedHashMap<>();
+        for (Map.Entry<Integer, String> e : loaded.entrySet()) {
+            if (e.getValue() != null && !e.getValue().isBlank()) {
+                parsed.put(e.getKey(), RsaKeyManager.publicKeyFromBase64(e.getValue()));
+            }
+        }
+        synchronized (keys) {
+            parsed.forEach((id, pk) -> {
+                Long generation = loadedAt.get(id);
+                if (generation != null && generationOf(id) == generation) keys.put(id, pk);
+            });
+        }
+    }
+
+    public void invalidate(int userId) {
+        synchronized (keys) {
+            keys.remove(userId);
+            generations.put(userId, ++lastGeneration);
+        }
+    }
+
+    public void clear() {
+        synchronized (keys) {
+            keys.clear();
+            generations.clear();
+            clearedAt = ++lastGeneration;
+        }
+    }
+
+    /** Change à chaque invalidation de {@code userId} ou {@link #clear()} ; appelé sous le verrou de keys. */
+    private long generationOf(int userId) {
+        return Math.max(clearedAt, generations.getOrDefault(userId, 0L));
+    }
+
+    public Stats stats() {
+        synchronized (keys) {
+            return new Stats(hits.get(), misses.get(), keys.size());
+        }
+    }
+}
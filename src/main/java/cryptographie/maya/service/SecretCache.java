@@ -0,0 +1,213 @@
+package cryptographie.maya.service;
+
+import cryptographie.maya.crypto.DekWrapper;
+import cryptographie.maya.crypto.RsaKeyManager;
+import cryptographie.maya.crypto.SecretBuffer;
+
+import javax.security.auth.DestroyFailedException;
+import javax.security.auth.Destroyable;
+import java.security.PrivateKey;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache de secrets de session : clés privées RSA déjà parsées (par username) et DEK déjà
+ * déballées (par user + item). Borné en taille (LRU) et en durée (TTL) ; toute entrée évincée
+ * est effacée (DEK remplies de zéros, clé privée détruite si le provider le permet).
+ *
+ * Les DEK sont rendues en copie : l'appelant efface la sienne, le cache garde la sienne.
+ */
+public final class SecretCache {
+
+    private static final SecretCache SESSION = new SecretCache(256, Duration.ofMinutes(15));
+
+    public record Stats(long hits, long misses, long evictions, int size) {
+        public double hitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+
+    private record PrivateKeyId(String username) {}
+
+    private record DekId(int userId, int itemId) {}
+
+    private static final class Entry {
+        final Object value;
+        final long expiresAt;
+
+        Entry(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<Object, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public SecretCache(int maxEntries, Duration ttl) {
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be >= 1");
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest) {
+                if (size() <= SecretCache.this.maxEntries) return false;
+                evict(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Cache partagé des appelants sans {@link Session} (rotation de clés, outils), vidé par
+     * {@link SessionManager#clear()} ; chaque session a le sien ({@link Session#secrets()}).
+     */
+    public static SecretCache session() {
+        return SESSION;
+    }
+
+    // --- clés privées ---
+
+    /** Clé privée de keys/&lt;username&gt;.pk8, lue et parsée une seule fois par TTL. */
+    public PrivateKey privateKey(String username) throws Exception {
+        PrivateKeyId id = new PrivateKeyId(username);
+        Object cached = get(id);
+        if (cached != null) return (PrivateKey) cached;
+
+        PrivateKey sk = RsaKeyManager.loadPrivateKey(username);
+        put(id, sk);
+        return sk;
+    }
+
+    /** À appeler quand la paire de clés de l'utilisateur change. */
+    public void invalidatePrivateKey(String username) {
+        remove(new PrivateKeyId(username));
+    }
+
+    // --- DEK ---
+
+    public byte[] getDek(int userId, int itemId) {
+        byte[] dek = (byte[]) get(new DekId(userId, itemId));
+        return dek == null ? null : dek.clone();
+    }
+
+    public void putDek(int userId, int itemId, byte[] dek) {
+        put(new DekId(userId, itemId), dek.clone());
+    }
+
+    public void invalidateItem(int userId, int itemId) {
+        remove(new DekId(userId, itemId));
+    }
+
+    /** Décorateur : déballe via {@code inner} au premier accès, puis sert la DEK depuis le cache ; le fermer ferme {@code inner}. */
+    public DekWrapper caching(DekWrapper inner, int userId, int itemId) {
+        return new DekWrapper() {
+            @Override
+            public String alg() {
+                return inner.alg();
+            }
+
+            @Override
+            public byte[] wrap(byte[] dek) throws Exception {
+                return inner.wrap(dek);
+            }
+
+            @Override
+            public byte[] wrap(SecretBuffer dek) throws Exception {
+                return inner.wrap(dek);
+            }
+
+            @Override
+            public byte[] unwrap(byte[] encryptedDek) throws Exception {
+                byte[] dek = getDek(userId, itemId);
+                if (dek != null) return dek;
+                dek = inner.unwrap(encryptedDek);
+                putDek(userId, itemId, dek);
+                return dek;
+            }
+
+            @Override
+            public void close() {
+                inner.close();
+            }
+        };
+    }
+
+    // --- gestion ---
+
+    public Stats stats() {
+        synchronized (entries) {
+            return new Stats(hits.get(), misses.get(), evictions.get(), entries.size());
+        }
+    }
+
+    /** Efface et retire toutes les entrées (déconnexion). */
+    public void clear() {
+        synchronized (entries) {
+            entries.values().forEach(this::evict);
+            entries.clear();
+        }
+    }
+
+    private Object get(Object id) {
+        synchronized (entries) {
+            Entry e = entries.get(id);
+            if (e != null && e.expiresAt - System.nanoTime() > 0) {
+                hits.incrementAndGet();
+                return e.value;
+            }
+            if (e != null) evict(entries.remove(id));
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    private void put(Object id, Object value) {
+        synchronized (entries) {
+            purgeExpired();
+            Entry previous = entries.put(id, new Entry(value, System.nanoTime() + ttlNanos));
+            if (previous != null && previous.value != value) evict(previous);
+        }
+    }
+
+    private void remove(Object id) {
+        synchronized (entries) {
+            Entry e = entries.remove(id);
+            if (e != null) evict(e);
+        }
+    }
+
+    private void purgeExpired() {
+        long now = System.nanoTime();
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            Entry e = it.next();
+            if (e.expiresAt - now <= 0) {
+                evict(e);
+                it.remove();
+            }
+        }
+    }
+
+    private void evict(Entry e) {
+        evictions.incrementAndGet();
+        if (e.value instanceof byte[] secret) {
+            Arrays.fill(secret, (byte) 0);
+        } else if (e.value instanceof Destroyable d) {
+            try {
+                d.destroy();
+            } catch (DestroyFailedException ignored) {
+                // Les clés RSA du provider JDK ne sont pas destructibles : on se contente de lâcher la référence
+            }
+        }
+    }
+}
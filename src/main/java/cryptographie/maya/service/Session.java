@@ -0,0 +1,21 @@
+package cryptographie.maya.service;
+
+import java.time.Instant;
+
+/**
+ * Session authentifiée, immuable : créée par {@link SessionStore#open}, retrouvée par son jeton.
+ * {@code secrets} est le cache de clés propre à la session (clé privée parsée, DEK déballées),
+ * effacé à la fermeture ou à l'expiration.
+ */
+public record Session(String token, int userId, String username, String role, Instant createdAt, SecretCache secrets) {
+
+    public boolean isAdmin() {
+        return role != null && role.equalsIgnoreCase("ADMIN");
+    }
+
+    /** Sans le jeton : une trace ou un log ne doit pas suffire à reprendre la session. */
+    @Override
+    public String toString() {
+        return "Session[userId=" + userId + ", username=" + username + ", role=" + role + ", createdAt=" + createdAt + "]";
+    }
+}
@@ -1,54 +1,71 @@
 package cryptographie.maya.service;
 
+import java.util.Optional;
+
+/**
+ * Session de l'interface JavaFX : l'utilisateur connecté dans cette fenêtre, adossé à
+ * {@link SessionStore}. Seuls les contrôleurs passent par ici ; les services reçoivent la
+ * {@link Session} en paramètre.
+ */
 public final class SessionManager {
 
-    private static Integer userId;
-    private static String username;
-    private static String role;
+    private static volatile Session current;
 
     private SessionManager() {}
 
-    public static void startSession(int userId, String username, String role) {
-        SessionManager.userId = userId;
-        SessionManager.username = username;
-        SessionManager.role = role;
+    public static Session startSession(int userId, String username, String role) {
+        Session previous = current;
+        current = SessionStore.shared().open(userId, username, role);
+        if (previous != null) SessionStore.shared().close(previous.token());
+        return current;
+    }
+
+    /** Session courante si elle n'a pas expiré (compte comme une activité). */
+    public static Optional<Session> currentSession() {
+        Session s = current;
+        return s == null ? Optional.empty() : SessionStore.shared().find(s.token());
+    }
+
+    /** Non-null: throw si pas connecté ou session expirée. */
+    public static Session requireSession() {
+        return currentSession().orElseThrow(() -> new IllegalStateException("User not logged in"));
     }
 
     public static boolean isLoggedIn() {
-        return userId != null && username != null && !username.isBlank();
+        return currentSession().isPresent();
     }
 
     /** Nullable: utiliser seulement si tu gères le null toi-même. */
     public static Integer getUserId() {
-        return userId;
+        return currentSession().map(Session::userId).orElse(null);
     }
 
     /** Non-null: throw si pas connecté (évite NPE par auto-unboxing). */
     public static int requireUserId() {
-        if (!isLoggedIn()) throw new IllegalStateException("User not logged in");
-        return userId;
+        return requireSession().userId();
     }
 
     public static String getUsername() {
-        return username;
+        return currentSession().map(Session::username).orElse(null);
     }
 
     public static String requireUsername() {
-        if (!isLoggedIn()) throw new IllegalStateException("User not logged in");
-        return username;
+        return requireSession().username();
     }
 
     public static String getRole() {
-        return role;
+        return currentSession().map(Session::role).orElse(null);
     }
 
     public static boolean isAdmin() {
-        return role != null && role.equalsIgnoreCase("ADMIN");
+        return currentSession().map(Session::isAdmin).orElse(false);
     }
 
     public static void clear() {
-        userId = null;
-        username = null;
-        role = null;
+        Session s = current;
+        current = null;
+        // Ferme la session (son cache de clés, et la KEK si c'était la dernière de l'utilisateur)
+        if (s != null) SessionStore.shared().close(s.token());
+        SecretCache.session().clear();
     }
-}
\ No newline at end of file
+}
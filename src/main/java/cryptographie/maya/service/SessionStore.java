@@ -0,0 +1,231 @@
+package cryptographie.maya.service;
+
+import cryptographie.maya.crypto.CryptoRandom;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registre des sessions du processus : jeton opaque (256 bits aléatoires, Base64 URL) -> {@link Session}.
+ * Plusieurs utilisateurs, et plusieurs sessions par utilisateur, cohabitent dans une même JVM.
+ *
+ * - Recherche en O(1) (table concurrente) ; chaque accès repousse l'expiration d'inactivité, sans
+ *   verrou ni déplacement dans l'échéancier.
+ * - Expiration par roue temporelle ({@code slots} cases de {@code tick}) : une session est rangée
+ *   dans la case de sa prochaine échéance (inactivité ou absolue). Quand la case passe, l'échéance
+ *   réelle est recalculée : atteinte, la session est fermée ; repoussée par un accès, elle est
+ *   re-rangée plus loin. Une recherche vérifie aussi l'échéance, la roue ne sert qu'à libérer.
+ * - Fermer une session efface son cache de clés ; à la dernière session d'un utilisateur, sa KEK
+ *   ({@link MasterKeyService}) est effacée aussi. Un envoi ou un téléchargement encore en cours n'en
+ *   souffre pas, même quand l'échéancier expire la session pendant qu'il construit son wrapper : la
+ *   copie de la KEK est prise sous le même verrou que son effacement ({@link MasterKeyService}), elle
+ *   est donc intacte ou absente (re-dérivée), jamais à zéro ; chaque wrapper garde la sienne
+ *   ({@link cryptographie.maya.crypto.DekWrapper#aesKw}) et les DEK sont des copies du cache.
+ *   L'opération se termine normalement, la session suivante re-dérive la KEK.
+ *
+ * Réglages : {@code -Dbluelocker.session.idleMinutes} (défaut 30),
+ * {@code -Dbluelocker.session.absoluteHours} (défaut 12).
+ */
+public final class SessionStore implements AutoCloseable {
+
+    private static final int TOKEN_BYTES = 32;
+    private static final Base64.Encoder TOKEN_ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static volatile SessionStore shared;
+
+    public record Stats(int active, long opened, long closed, long expiredIdle, long expiredAbsolute) {
+        @Override
+        public String toString() {
+            return String.format("%d active sessions; %d opened, %d closed, %d idle-expired, %d absolute-expired",
+                    active, opened, closed, expiredIdle, expiredAbsolute);
+        }
+    }
+
+    private static final class Entry {
+        final Session session;
+        final long absoluteDeadline;
+        volatile long lastAccess;
+
+        Entry(Session session, long now, long absoluteNanos) {
+            this.session = session;
+            this.lastAccess = now;
+            this.absoluteDeadline = now + absoluteNanos;
+        }
+    }
+
+    private final long idleNanos;
+    private final long absoluteNanos;
+    private final long tickNanos;
+    private final long origin = System.nanoTime();
+    private final Queue<Entry>[] wheel;
+    private volatile long cursor;
+
+    private final ConcurrentHashMap<String, Entry> byToken = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Integer> perUser = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService ticker;
+
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong closed = new AtomicLong();
+    private final AtomicLong expiredIdle = new AtomicLong();
+    private final AtomicLong expiredAbsolute = new AtomicLong();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SessionStore(Duration idleTimeout, Duration absoluteTimeout, Duration tick, int slots) {
+        if (slots < 1 || tick.isNegative() || tick.isZero()) throw new IllegalArgumentException("tick and slots must be positive");
+        this.idleNanos = idleTimeout.toNanos();
+        this.absoluteNanos = absoluteTimeout.toNanos();
+        this.tickNanos = tick.toNanos();
+        this.wheel = new Queue[slots];
+        for (int i = 0; i < slots; i++) wheel[i] = new ConcurrentLinkedQueue<>();
+
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-expiry");
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleAtFixedRate(this::advance, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** Registre du processus : roue de 512 cases d'une seconde. */
+    public static SessionStore shared() {
+        SessionStore s = shared;
+        if (s == null) {
+            synchronized (SessionStore.class) {
+                s = shared;
+                if (s == null) {
+                    shared = s = new SessionStore(
+                            Duration.ofMinutes(Long.getLong("bluelocker.session.idleMinutes", 30)),
+                            Duration.ofHours(Long.getLong("bluelocker.session.absoluteHours", 12)),
+                            Duration.ofSeconds(1), 512);
+                }
+            }
+        }
+        return s;
+    }
+
+    /** Ouvre une session pour un utilisateur déjà authentifié ({@link AuthService#login}). */
+    public Session open(int userId, String username, String role) {
+        String token = TOKEN_ENCODER.encodeToString(CryptoRandom.bytes(TOKEN_BYTES));
+        Session session = new Session(token, userId, username, role, Instant.now(),
+                new SecretCache(256, Duration.ofMinutes(15)));
+        long now = System.nanoTime();
+        Entry e = new Entry(session, now, absoluteNanos);
+        perUser.merge(userId, 1, Integer::sum);
+        byToken.put(token, e);
+        opened.incrementAndGet();
+        schedule(e, deadline(e));
+        return session;
+    }
+
+    /** Session du jeton, si elle est encore valide ; compte comme une activité. */
+    public Optional<Session> find(String token) {
+        if (token == null) return Optional.empty();
+        Entry e = byToken.get(token);
+        if (e == null) return Optional.empty();
+        long now = System.nanoTime();
+        if (deadline(e) - now <= 0) {
+            expire(e, now);
+            return Optional.empty();
+        }
+        e.lastAccess = now;
+        return Optional.of(e.session);
+    }
+
+    public Session require(String token) {
+        return find(token).orElseThrow(() -> new IllegalStateException("Session expired or unknown"));
+    }
+
+    /** Déconnexion ; sans effet si la session est déjà fermée ou expirée. */
+    public void close(String token) {
+        Entry e = token == null ? null : byToken.get(token);
+        if (e != null && release(e)) closed.incrementAndGet();
+    }
+
+    /** Sessions ouvertes d'un utilisateur (invalidation de caches après un changement de clés). */
+    public List<Session> sessionsOf(int userId) {
+        List<Session> out = new ArrayList<>();
+        for (Entry e : byToken.values()) {
+            if (e.session.userId() == userId) out.add(e.session);
+        }
+        return out;
+    }
+
+    public Stats stats() {
+        return new Stats(byToken.size(), opened.get(), closed.get(), expiredIdle.get(), expiredAbsolute.get());
+    }
+
+    /** Ferme toutes les sessions et arrête la roue. */
+    @Override
+    public void close() {
+        ticker.shutdownNow();
+        byToken.values().forEach(e -> {
+            if (release(e)) closed.incrementAndGet();
+        });
+    }
+
+    private long deadline(Entry e) {
+        long idle = e.lastAccess + idleNanos;
+        return idle - e.absoluteDeadline < 0 ? idle : e.absoluteDeadline;
+    }
+
+    private void schedule(Entry e, long deadline) {
+        long tick = Math.max(cursor + 1, (deadline - origin + tickNanos - 1) / tickNanos);
+        wheel[(int) (tick % wheel.length)].add(e);
+    }
+
+    /** Thread de la roue : traite chaque case dont l'instant est passé. */
+    private void advance() {
+        long now = System.nanoTime();
+        long target = (now - origin) / tickNanos;
+        while (cursor <= target) {
+            Queue<Entry> slot = wheel[(int) (cursor % wheel.length)];
+            // Seulement les entrées présentes au départ : une entrée re-rangée ici attend le tour suivant
+            for (int n = slot.size(); n > 0; n--) {
+                Entry e = slot.poll();
+                if (e == null) break;
+                if (byToken.get(e.session.token()) != e) continue;
+                long deadline = deadline(e);
+                if (deadline - now <= 0) {
+                    expire(e, now);
+                } else {
+                    schedule(e, deadline);
+                }
+            }
+            cursor++;
+        }
+    }
+
+    private void expire(Entry e, long now) {
+        if (!release(e)) return;
+        if (e.absoluteDeadline - now <= 0) expiredAbsolute.incrementAndGet();
+        else expiredIdle.incrementAndGet();
+    }
+
+    /** Retire la session une seule fois, efface ses secrets ; false si déjà retirée. */
+    private boolean release(Entry e) {
+        Session s = e.session;
+        if (!byToken.remove(s.token(), e)) return false;
+        s.secrets().clear();
+        perUser.compute(s.userId(), (id, n) -> {
+            if (n == null || n <= 1) {
+                // N'efface que l'exemplaire du registre, sous le verrou de son entrée : les wrappers
+                // déjà remis gardent leur copie, ceux en construction en prennent une intacte ou re-dérivent
+                MasterKeyService.clearSessionKeys(id);
+                return null;
+            }
+            return n - 1;
+        });
+        return true;
+    }
+}
@@ -3,6 +3,7 @@ package cryptographie.maya.util;
 import cryptographie.maya.dao.impl.UserDAOImpl;
 import cryptographie.maya.model.User;
 import cryptographie.maya.crypto.RsaKeyManager;
+import cryptographie.maya.service.PasswordPolicy;
 import de.mkammerer.argon2.Argon2;
 import de.mkammerer.argon2.Argon2Factory;
 
@@ -15,9 +16,10 @@ import java.util.Base64;
  * Utilitaire CLI pour créer un admin ou afficher l'INSERT SQL.
  *
  * Usage:
- *   java -cp target/classes:target/dependency/* cryptographie.maya.util.AdminCreator <username> <password> [--insert] [email]
+ *   java -cp target/classes:target/dependency/* cryptographie.maya.util.AdminCreator <username> <password> [--insert] [--key=RSA|X25519] [email]
  *
  * Si --insert est fourni, le programme tente d'insérer via UserDAOImpl (JDBC doit être configuré).
+ * --key choisit le type de la paire de clés (défaut : {@link RsaKeyManager#DEFAULT_USER_KEY_ALG}).
  */
 public final class AdminCreator {
 
@@ -25,7 +27,7 @@ public final class AdminCreator {
 
     public static void main(String[] args) {
         if (args.length < 2) {
-            System.out.println("Usage: AdminCreator <username> <password> [--insert] [email]");
+            System.out.println("Usage: AdminCreator <username> <password> [--insert] [--key=RSA|X25519] [email]");
             System.exit(1);
         }
 
@@ -33,9 +35,11 @@ public final class AdminCreator {
         String password = args[1];
         boolean doInsert = false;
         String email = null;
+        String keyAlg = RsaKeyManager.DEFAULT_USER_KEY_ALG;
 
         for (int i = 2; i < args.length; i++) {
             if ("--insert".equalsIgnoreCase(args[i])) doInsert = true;
+            else if (args[i].startsWith("--key=")) keyAlg = args[i].substring("--key=".length());
             else email = args[i];
         }
 
@@ -45,8 +49,8 @@ public final class AdminCreator {
         String saltB64 = null;
 
         try {
-            // Générer le hash Argon2
-            hash = argon2.hash(3, 65536, 1, pwdChars);
+            // Générer le hash Argon2 (paramètres de PasswordPolicy)
+            hash = PasswordPolicy.current().hash(pwdChars);
             System.out.println("Generated Argon2 hash:");
             System.out.println(hash);
 
@@ -67,8 +71,8 @@ public final class AdminCreator {
         }
 
         try {
-            // Générer clé RSA et sauvegarder la clé privée localement
-            KeyPair kp = RsaKeyManager.generateKeyPair();
+            // Générer la paire de clés et sauvegarder la clé privée localement
+            KeyPair kp = RsaKeyManager.newUserKeyPair(keyAlg);
             RsaKeyManager.savePrivateKey(username, kp.getPrivate());
             String publicKeyB64 = RsaKeyManager.publicKeyToBase64(kp.getPublic());
 
@@ -0,0 +1,62 @@
+package cryptographie.maya.util;
+
+import cryptographie.maya.service.Argon2Calibration;
+import cryptographie.maya.service.PasswordPolicy;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Utilitaire CLI : paramètres Argon2id adaptés à la machine (voir {@link Argon2Calibration}).
+ *
+ * Usage:
+ *   java -cp target/classes:target/dependency/* cryptographie.maya.util.CalibrateArgon2
+ *        [--target-ms=500] [--budget-mib=512] [--concurrency=8] [--parallelism=1] [--out=argon2.properties]
+ *
+ * Affiche les mesures et la politique retenue ; avec --out, écrit un fichier à passer à
+ * l'application par {@code -Dbluelocker.passwordPolicy=<fichier>} (ou à recopier dans
+ * {@code password.properties}). Le fichier porte aussi le budget mémoire utilisé, que
+ * {@link cryptographie.maya.service.PasswordVerifier} reprend. Les comptes existants sont réécrits à leur prochaine connexion.
+ */
+public final class CalibrateArgon2 {
+
+    private CalibrateArgon2() {}
+
+    public static void main(String[] args) throws Exception {
+        long targetMillis = 500;
+        long budgetMiB = PasswordPolicy.memoryBudgetKiB() / 1024;
+        int concurrency = Runtime.getRuntime().availableProcessors();
+        int parallelism = 1;
+        Path out = null;
+
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--target-ms=")) targetMillis = Long.parseLong(value);
+            else if (arg.startsWith("--budget-mib=")) budgetMiB = Long.parseLong(value);
+            else if (arg.startsWith("--concurrency=")) concurrency = Integer.parseInt(value);
+            else if (arg.startsWith("--parallelism=")) parallelism = Integer.parseInt(value);
+            else if (arg.startsWith("--out=")) out = Paths.get(value);
+            else {
+                System.out.println("Usage: CalibrateArgon2 [--target-ms=500] [--budget-mib=512] [--concurrency=N] [--parallelism=1] [--out=fichier]");
+                System.exit(1);
+            }
+        }
+
+        System.out.println("Current policy: " + PasswordPolicy.current());
+        Argon2Calibration.Report report = Argon2Calibration.calibrate(targetMillis, budgetMiB * 1024, concurrency, parallelism);
+        System.out.println(report);
+        // Le budget calibré part avec la politique : le pool de vérification doit pouvoir tenir au moins un hash
+        long keptBudgetMiB = Math.max(budgetMiB, (report.chosen().memoryKiB() + 1023) / 1024);
+        String properties = report.chosen().toProperties() + "argon2.memoryBudgetMiB=" + keptBudgetMiB + System.lineSeparator();
+        System.out.print(properties);
+
+        if (out != null) {
+            if (out.getParent() != null) Files.createDirectories(out.getParent());
+            Files.writeString(out, "# " + report.toString().lines().reduce((a, b) -> b).orElse("").trim()
+                    + System.lineSeparator() + properties, StandardCharsets.UTF_8);
+            System.out.println("Policy written to " + out.toAbsolutePath());
+        }
+    }
+}
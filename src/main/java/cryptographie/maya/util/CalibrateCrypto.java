@@ -0,0 +1,36 @@
+package cryptographie.maya.util;
+
+import cryptographie.maya.crypto.ContentCipher;
+import cryptographie.maya.crypto.ProviderCalibration;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Utilitaire CLI : calibration crypto de la machine (voir {@link ProviderCalibration}), le même
+ * calcul que celui lancé au démarrage de l'application, sans interface.
+ *
+ * Usage:
+ *   java -cp target/classes:target/dependency/* cryptographie.maya.util.CalibrateCrypto [rapport.txt]
+ *
+ * Affiche les débits (Mo/s, ops/s) par provider et taille de segment, et ce qui serait retenu ;
+ * avec un chemin, le rapport est aussi écrit dans ce fichier (à joindre aux tickets de capacité).
+ */
+public final class CalibrateCrypto {
+
+    private CalibrateCrypto() {}
+
+    public static void main(String[] args) throws Exception {
+        String report = ProviderCalibration.calibrate() + System.lineSeparator() + ContentCipher.calibrate();
+        System.out.println(report);
+
+        if (args.length > 0) {
+            Path out = Paths.get(args[0]);
+            if (out.getParent() != null) Files.createDirectories(out.getParent());
+            Files.writeString(out, report + System.lineSeparator(), StandardCharsets.UTF_8);
+            System.out.println("Report written to " + out.toAbsolutePath());
+        }
+    }
+}
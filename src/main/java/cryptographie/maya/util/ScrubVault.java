@@ -0,0 +1,57 @@
+package cryptographie.maya.util;
+
+import cryptographie.maya.dao.impl.SecureItemDAOImpl;
+import cryptographie.maya.dao.impl.UserDAOImpl;
+import cryptographie.maya.service.IntegrityScrubber;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Utilitaire CLI : vérification d'intégrité de secure_items (voir {@link IntegrityScrubber}).
+ *
+ * Usage:
+ *   java -cp target/classes:target/dependency/* cryptographie.maya.util.ScrubVault [--full] [--workers N] [--mbps N] [report.csv]
+ *
+ * --full déchiffre chaque item avec les clés du répertoire keys/ (à lancer par l'opérateur qui les détient).
+ * --mbps limite la lecture des blobs (Mo/s, 0 = illimité, défaut 8). Relancé après une interruption,
+ * le scrub reprend au checkpoint jobs/scrub.properties et complète le même rapport.
+ */
+public final class ScrubVault {
+
+    private ScrubVault() {}
+
+    public static void main(String[] args) throws Exception {
+        boolean full = false;
+        int workers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        long mbps = 8;
+        Path report = Paths.get("reports", "scrub-report.csv");
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--full" -> full = true;
+                case "--workers" -> workers = Integer.parseInt(args[++i]);
+                case "--mbps" -> mbps = Long.parseLong(args[++i]);
+                default -> report = Paths.get(args[i]);
+            }
+        }
+
+        IntegrityScrubber scrubber = new IntegrityScrubber(new SecureItemDAOImpl(), Paths.get("jobs", "scrub.properties"), report)
+                .workers(workers)
+                .maxBytesPerSecond(mbps * 1024 * 1024)
+                .onProgress(p -> System.out.printf("%d items (%d decrypted, %d failed), %.1f MB read, %.0f items/s, last id %d%n",
+                        p.scanned(), p.verified(), p.failed(), p.bytesRead() / 1e6, p.itemsPerSecond(), p.lastId()));
+
+        IntegrityScrubber.Progress result;
+        if (full) {
+            try (IntegrityScrubber.OperatorKeys keys = new IntegrityScrubber.OperatorKeys(new UserDAOImpl())) {
+                result = scrubber.fullDecrypt(keys).run();
+            }
+        } else {
+            result = scrubber.run();
+        }
+
+        System.out.println(result.failed() == 0 ? "No corrupted item." : result.failed() + " failing item(s), see " + report.toAbsolutePath());
+        System.exit(result.failed() == 0 ? 0 : 2);
+    }
+}
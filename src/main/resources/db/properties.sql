@@ -22,6 +22,7 @@ CREATE TABLE IF NOT EXISTS users (
   email VARCHAR(255),
   role VARCHAR(32) DEFAULT 'USER',
   public_key TEXT, -- Base64 X.509
+  wrapped_umk VARBINARY(512), -- clé maître utilisateur (32 octets) enveloppée RSA-OAEP, créée au premier upload
   created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
@@ -32,10 +33,35 @@ CREATE TABLE IF NOT EXISTS secure_items (
   title VARCHAR(255) NOT NULL,
   item_type VARCHAR(32) NOT NULL,
   file_size BIGINT DEFAULT 0,
-  encrypted_data LONGBLOB NOT NULL,
   iv VARBINARY(16) NOT NULL,           -- 12 bytes expected, 16 for safety
   encrypted_dek VARBINARY(512) NOT NULL,
   dek_alg VARCHAR(64) NOT NULL,
+  encrypted_size BIGINT NOT NULL DEFAULT 0, -- taille du ciphertext, écrite à l'insertion
   created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
   CONSTRAINT fk_secure_items_user FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
-) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
\ No newline at end of file
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- secure_item_chunks table (ciphertext des items en morceaux de 1 Mio, le dernier plus court) :
+-- une lecture ne fait lire au serveur que les morceaux qu'elle recouvre
+CREATE TABLE IF NOT EXISTS secure_item_chunks (
+  item_id INT NOT NULL,
+  seq INT NOT NULL,
+  data MEDIUMBLOB NOT NULL,
+  PRIMARY KEY (item_id, seq),
+  CONSTRAINT fk_secure_item_chunks_item FOREIGN KEY (item_id) REFERENCES secure_items(id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- migration des bases existantes (clé maître utilisateur, dek_alg 'AES-KW-UMK')
+-- ALTER TABLE users ADD COLUMN wrapped_umk VARBINARY(512) NULL AFTER public_key;
+
+-- migration des bases existantes (taille du ciphertext en colonne, remplie une fois)
+-- ALTER TABLE secure_items ADD COLUMN encrypted_size BIGINT NOT NULL DEFAULT 0 AFTER dek_alg;
+-- UPDATE secure_items SET encrypted_size = LENGTH(encrypted_data) WHERE encrypted_size = 0;
+
+-- migration des bases existantes (ciphertext découpé dans secure_item_chunks, une fois, après encrypted_size)
+-- SET SESSION cte_max_recursion_depth = 4096;
+-- INSERT INTO secure_item_chunks (item_id, seq, data)
+--   WITH RECURSIVE s (seq) AS (SELECT 0 UNION ALL SELECT seq + 1 FROM s WHERE seq < 4095)
+--   SELECT i.id, s.seq, SUBSTRING(i.encrypted_data, s.seq * 1048576 + 1, 1048576)
+--   FROM secure_items i JOIN s ON s.seq * 1048576 < i.encrypted_size;
+-- ALTER TABLE secure_items DROP COLUMN encrypted_data;